@@ -142,6 +142,14 @@ public class Com4jgenMojo extends AbstractMojo implements ErrorListener {
 	 */
 	private String libVer;
 
+	/**
+	 * Also generate a stub class for each custom interface, which the com4j
+	 * runtime uses instead of a dynamic proxy to invoke COM methods.
+	 * 
+	 * @parameter expression="${generateStubs}" default-value="false"
+	 */
+	private boolean generateStubs;
+
 	public void execute() throws MojoExecutionException {
 		getLog().debug("Starting Com4jMojo for: " + file);
 
@@ -151,6 +159,7 @@ public class Com4jgenMojo extends AbstractMojo implements ErrorListener {
 
 		// all is good, now proceed with launch
 		Driver driver = new Driver();
+		driver.generateStubs = generateStubs;
 
 		Lib lib = new Lib();
 		// libId wins over the specified file
@@ -23,7 +23,8 @@ JNIEXPORT jobject JNICALL Java_com4j_Native_invoke(JNIEnv* env,
 	jintArray _convs,		// conversions
 	jint returnIndex,		// index of the return value in the parameter list
 	jboolean returnIsInOut,	// true if the return type also shows up in the paramter list
-	jint returnConv			// conversion of the return type
+	jint returnConv,		// conversion of the return type
+	jlong pCallInterface	// CallInterface of the method, or 0
 ) {
 	Environment e(env);
 	jint* convs =  env->GetIntArrayElements(_convs,NULL);
@@ -33,11 +34,43 @@ JNIEXPORT jobject JNICALL Java_com4j_Native_invoke(JNIEnv* env,
 		args,
 		convs,
 		returnIndex, returnIsInOut!=0,
-		returnConv );
+		returnConv,
+		reinterpret_cast<CallInterface*>(pCallInterface) );
 	env->ReleaseIntArrayElements(_convs,convs,0);
 	return r;
 }
 
+JNIEXPORT jlong JNICALL Java_com4j_Native_invokeFrame(JNIEnv* env,
+	jclass __unused,
+	jlong pComObject,		// pointer to the COM object
+	jlong pFuncIndex,		// which function are we trying to call?
+	jobject _frame,			// direct buffer that has the arguments
+	jintArray _convs,		// conversions
+	jint returnConv,		// conversion of the return type, or 0 if none
+	jlong pCallInterface	// CallInterface of the method, or 0
+) {
+	char* frame = reinterpret_cast<char*>(env->GetDirectBufferAddress(_frame));
+	const int paramLen = env->GetArrayLength(_convs);
+	// the array is small, so copying it is cheaper than pinning it
+	jint* convs = (jint*)alloca((paramLen+1)*sizeof(jint));
+	env->GetIntArrayRegion(_convs,0,paramLen,convs);
+	return invokeFrame(env,
+		reinterpret_cast<void*>(pComObject),
+		(*reinterpret_cast<VTable*>(pComObject))[pFuncIndex],
+		frame, paramLen,
+		convs,
+		returnConv,
+		reinterpret_cast<CallInterface*>(pCallInterface) );
+}
+
+JNIEXPORT jlong JNICALL Java_com4j_Native_createCallInterface(JNIEnv* env, jclass __unused) {
+	return reinterpret_cast<jlong>(newCallInterface());
+}
+
+JNIEXPORT void JNICALL Java_com4j_Native_deleteCallInterface(JNIEnv* env, jclass __unused, jlong pCallInterface) {
+	deleteCallInterface(reinterpret_cast<CallInterface*>(pCallInterface));
+}
+
 JNIEXPORT jobject JNICALL Java_com4j_Native_invokeDispatch( JNIEnv* env, jclass _, jlong pComObject, jint dispId, jint flag, jobjectArray args) {
 	
 	DISPPARAMS params;
@@ -411,6 +444,26 @@ JNIEXPORT void JNICALL Java_com4j_Native_coInitialize(
 	}	
 }
 
+JNIEXPORT void JNICALL Java_com4j_Native_coInitializeMTA(
+	JNIEnv* env, jclass _) {
+
+	HRESULT hr = CoInitializeEx(NULL,COINIT_MULTITHREADED);
+	if(FAILED(hr)) {
+		error(env,__FILE__,__LINE__,hr,"CoInitializeEx failed");
+	}	
+}
+
+JNIEXPORT jboolean JNICALL Java_com4j_Native_isMTA(
+	JNIEnv* env, jclass _) {
+
+	APTTYPE type;
+	APTTYPEQUALIFIER qualifier;
+	// CO_E_NOTINITIALIZED if the thread is in no apartment. Don't initialize it here;
+	// the thread isn't ours, and its apartment is up to the application
+	HRESULT hr = CoGetApartmentType(&type,&qualifier);
+	return SUCCEEDED(hr) && type==APTTYPE_MTA;
+}
+
 JNIEXPORT void JNICALL Java_com4j_Native_coUninitialize(
 	JNIEnv* env, jclass _) {
 
@@ -432,3 +485,106 @@ JNIEXPORT jobject JNICALL Java_com4j_Native_createBuffer(JNIEnv* env, jclass _,
 	return env->NewDirectByteBuffer(reinterpret_cast<void*>(ptr),size);
 }
 
+
+JNIEXPORT jlong JNICALL Java_com4j_Native_createSafeArray(JNIEnv* env, jclass _, jint vt, jintArray _bounds) {
+	// the bounds are (lower bound,element count) pairs
+	const int dims = env->GetArrayLength(_bounds)/2;
+	jint* bounds = (jint*)alloca(dims*2*sizeof(jint));
+	env->GetIntArrayRegion(_bounds,0,dims*2,bounds);
+
+	SAFEARRAYBOUND* sab = (SAFEARRAYBOUND*)alloca(dims*sizeof(SAFEARRAYBOUND));
+	for( int i=0; i<dims; i++ ) {
+		sab[i].lLbound = bounds[i*2];
+		sab[i].cElements = bounds[i*2+1];
+	}
+
+	SAFEARRAY* psa = SafeArrayCreate((VARTYPE)vt,dims,sab);
+	if(psa==NULL) {
+		error(env,__FILE__,__LINE__,E_OUTOFMEMORY,"SafeArrayCreate failed");
+		return 0;
+	}
+	return reinterpret_cast<jlong>(psa);
+}
+
+JNIEXPORT void JNICALL Java_com4j_Native_destroySafeArray(JNIEnv* env, jclass _, jlong ptr) {
+	HRESULT hr = SafeArrayDestroy(reinterpret_cast<SAFEARRAY*>(ptr));
+	if(FAILED(hr))
+		error(env,__FILE__,__LINE__,hr,"SafeArrayDestroy failed");
+}
+
+JNIEXPORT jobject JNICALL Java_com4j_Native_lockSafeArray(JNIEnv* env, jclass _, jlong ptr) {
+	SAFEARRAY* psa = reinterpret_cast<SAFEARRAY*>(ptr);
+	void* data;
+	HRESULT hr = SafeArrayAccessData(psa,&data);
+	if(FAILED(hr)) {
+		error(env,__FILE__,__LINE__,hr,"SafeArrayAccessData failed");
+		return NULL;
+	}
+
+	jlong size = psa->cbElements;
+	for( int i=0; i<psa->cDims; i++ )
+		size *= psa->rgsabound[i].cElements;
+	return env->NewDirectByteBuffer(data,size);
+}
+
+JNIEXPORT void JNICALL Java_com4j_Native_unlockSafeArray(JNIEnv* env, jclass _, jlong ptr) {
+	HRESULT hr = SafeArrayUnaccessData(reinterpret_cast<SAFEARRAY*>(ptr));
+	if(FAILED(hr))
+		error(env,__FILE__,__LINE__,hr,"SafeArrayUnaccessData failed");
+}
+
+JNIEXPORT jint JNICALL Java_com4j_Native_getSafeArrayType(JNIEnv* env, jclass _, jlong ptr) {
+	VARTYPE vt;
+	HRESULT hr = SafeArrayGetVartype(reinterpret_cast<SAFEARRAY*>(ptr),&vt);
+	if(FAILED(hr)) {
+		error(env,__FILE__,__LINE__,hr,"SafeArrayGetVartype failed");
+		return 0;
+	}
+	return vt;
+}
+
+JNIEXPORT jintArray JNICALL Java_com4j_Native_getSafeArrayBounds(JNIEnv* env, jclass _, jlong ptr) {
+	SAFEARRAY* psa = reinterpret_cast<SAFEARRAY*>(ptr);
+	const int dims = SafeArrayGetDim(psa);
+
+	// (lower bound,upper bound) pairs, from the first dimension
+	jint* bounds = (jint*)alloca(dims*2*sizeof(jint));
+	for( int i=0; i<dims; i++ ) {
+		LONG lb,ub;
+		SafeArrayGetLBound(psa,i+1,&lb);
+		SafeArrayGetUBound(psa,i+1,&ub);
+		bounds[i*2] = lb;
+		bounds[i*2+1] = ub;
+	}
+
+	jintArray r = env->NewIntArray(dims*2);
+	env->SetIntArrayRegion(r,0,dims*2,bounds);
+	return r;
+}
+
+JNIEXPORT jobject JNICALL Java_com4j_Native_safeArrayToFlat(JNIEnv* env, jclass _, jlong ptr) {
+	jarray r = safearray::SafeArrayXducer::toJavaFlat(env,reinterpret_cast<SAFEARRAY*>(ptr));
+	if(r==NULL)
+		error(env,__FILE__,__LINE__,"unable to convert the SAFEARRAY to a Java array");
+	return r;
+}
+
+JNIEXPORT jlong JNICALL Java_com4j_Native_flatToSafeArray(JNIEnv* env, jclass _, jobject data, jintArray _bounds) {
+	// the bounds are (lower bound,element count) pairs
+	const int dims = env->GetArrayLength(_bounds)/2;
+	jint* bounds = (jint*)alloca(dims*2*sizeof(jint));
+	env->GetIntArrayRegion(_bounds,0,dims*2,bounds);
+
+	SAFEARRAYBOUND* sab = (SAFEARRAYBOUND*)alloca(dims*sizeof(SAFEARRAYBOUND));
+	for( int i=0; i<dims; i++ ) {
+		sab[i].lLbound = bounds[i*2];
+		sab[i].cElements = bounds[i*2+1];
+	}
+
+	SAFEARRAY* psa = safearray::SafeArrayXducer::toNativeFlat(env,static_cast<jarray>(data),dims,sab);
+	if(psa==NULL) {
+		error(env,__FILE__,__LINE__,"unable to convert the given array to SAFEARRAY");
+		return 0;
+	}
+	return reinterpret_cast<jlong>(psa);
+}
@@ -32,6 +32,8 @@ enum Conv {
   cvCURRENCY    = 401,  cvCURRENCY_byRef = cvCURRENCY | BYREF,
 
 	cvSAFEARRAY   = 500,  cvSAFEARRAY_byRef = cvSAFEARRAY | BYREF,
+	cvSAFEARRAYHandle = 501,  cvSAFEARRAYHandle_byRef = cvSAFEARRAYHandle | BYREF,
+	cvSAFEARRAYFlat = 502,
 };
 
 
@@ -39,6 +41,15 @@ typedef void (*ComMethod)();
 typedef ComMethod* VTable;
 
 
+// the libffi call interface of one COM method, prepared by its first invocation
+// and reused by the later ones, since the shape of a method never changes.
+// opaque outside invoke.cpp.
+struct CallInterface;
+
+CallInterface* newCallInterface();
+void deleteCallInterface( CallInterface* ci );
+
+
 
 class Environment {
 	// JNI environment
@@ -59,7 +70,8 @@ public:
 		jint*			convs,	// conversions
 		int				retIndex,
 		bool			retIsInOut,
-		jint			retConv
+		jint			retConv,
+		CallInterface*	ci		// the prepared call of this method. can be NULL.
 	);
 
 	// adds a new post action
@@ -84,6 +96,13 @@ public:
 // return NULL if fails to convert
 VARIANT* convertToVariant( JNIEnv* env, jobject o );
 
+// invoke a method whose parameters and return value are all primitives, interface pointers, or GUIDs.
+// the arguments are passed in a frame of 8-byte slots that have the raw bits of the values.
+// a GUID is passed as the offset of the GUID in the frame. the return value, if any, is the last parameter.
+//
+// retConv is 0 if there's no return value. ci can be NULL.
+jlong invokeFrame( JNIEnv* env, void* pComObject, ComMethod method, char* frame, int paramLen, jint* convs, jint retConv, CallInterface* ci );
+
 
 extern JavaVM* jvm;
 
@@ -82,10 +82,34 @@ JNIEXPORT jint JNICALL Java_com4j_Native_release
 /*
  * Class:     com4j_Native
  * Method:    invoke
- * Signature: (JJ[Ljava/lang/Object;[IIZI)Ljava/lang/Object;
+ * Signature: (JJ[Ljava/lang/Object;[IIZIJ)Ljava/lang/Object;
  */
 JNIEXPORT jobject JNICALL Java_com4j_Native_invoke
-  (JNIEnv *, jclass, jlong, jlong, jobjectArray, jintArray, jint, jboolean, jint);
+  (JNIEnv *, jclass, jlong, jlong, jobjectArray, jintArray, jint, jboolean, jint, jlong);
+
+/*
+ * Class:     com4j_Native
+ * Method:    invokeFrame
+ * Signature: (JJLjava/nio/ByteBuffer;[IIJ)J
+ */
+JNIEXPORT jlong JNICALL Java_com4j_Native_invokeFrame
+  (JNIEnv *, jclass, jlong, jlong, jobject, jintArray, jint, jlong);
+
+/*
+ * Class:     com4j_Native
+ * Method:    createCallInterface
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL Java_com4j_Native_createCallInterface
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     com4j_Native
+ * Method:    deleteCallInterface
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com4j_Native_deleteCallInterface
+  (JNIEnv *, jclass, jlong);
 
 /*
  * Class:     com4j_Native
@@ -135,6 +159,22 @@ JNIEXPORT jlong JNICALL Java_com4j_Native_loadTypeLibrary
 JNIEXPORT void JNICALL Java_com4j_Native_coInitialize
   (JNIEnv *, jclass);
 
+/*
+ * Class:     com4j_Native
+ * Method:    coInitializeMTA
+ * Signature: ()V
+ */
+JNIEXPORT void JNICALL Java_com4j_Native_coInitializeMTA
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     com4j_Native
+ * Method:    isMTA
+ * Signature: ()Z
+ */
+JNIEXPORT jboolean JNICALL Java_com4j_Native_isMTA
+  (JNIEnv *, jclass);
+
 /*
  * Class:     com4j_Native
  * Method:    coUninitialize
@@ -167,6 +207,70 @@ JNIEXPORT void JNICALL Java_com4j_Native_unadvise
 JNIEXPORT jobject JNICALL Java_com4j_Native_createBuffer
   (JNIEnv *, jclass, jlong, jint);
 
+/*
+ * Class:     com4j_Native
+ * Method:    createSafeArray
+ * Signature: (I[I)J
+ */
+JNIEXPORT jlong JNICALL Java_com4j_Native_createSafeArray
+  (JNIEnv *, jclass, jint, jintArray);
+
+/*
+ * Class:     com4j_Native
+ * Method:    destroySafeArray
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com4j_Native_destroySafeArray
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com4j_Native
+ * Method:    lockSafeArray
+ * Signature: (J)Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_com4j_Native_lockSafeArray
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com4j_Native
+ * Method:    unlockSafeArray
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com4j_Native_unlockSafeArray
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com4j_Native
+ * Method:    getSafeArrayType
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com4j_Native_getSafeArrayType
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com4j_Native
+ * Method:    getSafeArrayBounds
+ * Signature: (J)[I
+ */
+JNIEXPORT jintArray JNICALL Java_com4j_Native_getSafeArrayBounds
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com4j_Native
+ * Method:    safeArrayToFlat
+ * Signature: (J)Ljava/lang/Object;
+ */
+JNIEXPORT jobject JNICALL Java_com4j_Native_safeArrayToFlat
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com4j_Native
+ * Method:    flatToSafeArray
+ * Signature: (Ljava/lang/Object;[I)J
+ */
+JNIEXPORT jlong JNICALL Java_com4j_Native_flatToSafeArray
+  (JNIEnv *, jclass, jobject, jintArray);
+
 #ifdef __cplusplus
 }
 #endif
@@ -49,10 +49,10 @@ JNIEXPORT jobject JNICALL Java_com4j_Variant_get0
 
 /*
  * Class:     com4j_Variant
- * Method:    convertTo
+ * Method:    convertTo0
  * Signature: (Ljava/lang/Class;)Ljava/lang/Object;
  */
-JNIEXPORT jobject JNICALL Java_com4j_Variant_convertTo
+JNIEXPORT jobject JNICALL Java_com4j_Variant_convertTo0
   (JNIEnv *, jobject, jclass);
 
 #ifdef __cplusplus
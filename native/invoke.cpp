@@ -76,6 +76,78 @@ ffi_error(JNIEnv* env, const char* op, ffi_status status) {
   }
 }
 
+struct PreparedCall {
+	ffi_cif		cif;
+	// the argument types the cif refers to. actually as many as cif.nargs
+	ffi_type*	types[1];
+};
+
+struct CallInterface {
+	PreparedCall* volatile prepared;
+};
+
+CallInterface* newCallInterface() {
+	CallInterface* ci = new CallInterface();
+	ci->prepared = NULL;
+	return ci;
+}
+
+void deleteCallInterface( CallInterface* ci ) {
+	if(ci->prepared!=NULL)
+		free(ci->prepared);
+	delete ci;
+}
+
+// get the cif to call a method with the given argument types.
+// if ci is given, the cif is prepared only on the first call. otherwise local is used.
+//
+// return NULL if fails
+static ffi_cif* prepareCall( JNIEnv* env, CallInterface* ci, ffi_cif* local, int argCount, ffi_type** types ) {
+	if(ci==NULL) {
+		ffi_status status = ffi_prep_cif(local, FFI_CALL_CONV, argCount, &ffi_type_uint32, types);
+		if (ffi_error(env, "Native call setup", status)) {
+			return NULL;
+		}
+		return local;
+	}
+
+	PreparedCall* p = ci->prepared;
+	if(p!=NULL) {
+		_ASSERT( p->cif.nargs==(unsigned)argCount );
+		return &p->cif;
+	}
+
+	// the cif keeps the pointer to the types, so copy them along with it
+	p = (PreparedCall*)malloc(sizeof(PreparedCall)+(argCount-1)*sizeof(ffi_type*));
+	memcpy(p->types,types,argCount*sizeof(ffi_type*));
+	ffi_status status = ffi_prep_cif(&p->cif, FFI_CALL_CONV, argCount, &ffi_type_uint32, p->types);
+	if (ffi_error(env, "Native call setup", status)) {
+		free(p);
+		return NULL;
+	}
+
+	// another thread may have prepared the same method in the mean time
+	PreparedCall* old = (PreparedCall*)InterlockedCompareExchangePointer((PVOID volatile*)&ci->prepared,p,NULL);
+	if(old!=NULL) {
+		free(p);
+		return &old->cif;
+	}
+	return &p->cif;
+}
+
+// throw a Java ComException for a failed HRESULT, with the system message if there's one
+static void throwComException( JNIEnv* env, HRESULT hr ) {
+	wchar_t* pmsg = NULL;
+	jobject str = NULL;
+	if(!FAILED(FormatMessageW(FORMAT_MESSAGE_ALLOCATE_BUFFER|FORMAT_MESSAGE_FROM_SYSTEM, NULL, hr, 0, (LPWSTR)&pmsg, 0, NULL ))) {
+		if(pmsg!=NULL) {
+			str = env->NewString(pmsg,(jsize)wcslen(pmsg));
+			LocalFree(pmsg);
+		}
+	}
+	env->Throw( (jthrowable)comexception_new_hr(env, str, (jint)hr, env->NewStringUTF(__FILE__), (jint)__LINE__ ) );
+}
+
 Environment::~Environment() {
 	// run post actions
 	while( postActions!=NULL ) {
@@ -90,7 +162,7 @@ Environment::~Environment() {
 static int invocationCount = 0;
 #endif
 
-jobject Environment::invoke( void* pComObject, ComMethod method, jobjectArray args, jint* convs, int retIndex, bool retIsInOut, jint retConv ) {
+jobject Environment::invoke( void* pComObject, ComMethod method, jobjectArray args, jint* convs, int retIndex, bool retIsInOut, jint retConv, CallInterface* ci ) {
 	Unmarshaller* unm = NULL;
 	Unmarshaller* retUnm = NULL;
 
@@ -135,6 +207,8 @@ jobject Environment::invoke( void* pComObject, ComMethod method, jobjectArray ar
 
 			case cvComObject:
 			case cvDISPATCH:
+			case cvSAFEARRAYHandle:	// the pointer is wrapped into com4j.SafeArray on the Java side
+			case cvSAFEARRAYFlat:	// or copied into com4j.FlatArray
 				retUnm = new ComObjectUnmarshaller();
 				break;
 
@@ -274,12 +348,15 @@ jobject Environment::invoke( void* pComObject, ComMethod method, jobjectArray ar
 
 			case cvComObject:
 			case cvDISPATCH:
+			case cvSAFEARRAYHandle:
+			case cvSAFEARRAYFlat:
 				c_args[comParamIndex].v_ptr = (void *)javaLangNumber_longValue(env,arg);
 				ffi_types[comParamIndex + 1] = &ffi_type_pointer;
 				ffi_values[comParamIndex + 1] = &c_args[comParamIndex].v_ptr;
 				break;
 
 			case cvComObject_byRef:
+			case cvSAFEARRAYHandle_byRef:
 				if(arg==NULL) {
 					c_args[comParamIndex].v_ptr = NULL;
 				} else {
@@ -532,12 +609,12 @@ jobject Environment::invoke( void* pComObject, ComMethod method, jobjectArray ar
 	invocationCount++;	// for debugging. this makes it easier to set a break-point.
 #endif
 
-	ffi_cif cif;
-	ffi_status status = ffi_prep_cif(&cif, FFI_CALL_CONV, ffi_arg_count, &ffi_type_uint32, ffi_types);
-	if (ffi_error(env, "Native call setup", status)) {
+	ffi_cif localCif;
+	ffi_cif* cif = prepareCall(env, ci, &localCif, ffi_arg_count, ffi_types);
+	if (cif==NULL) {
 		return NULL;
 	}
-	ffi_call(&cif, method, &result, ffi_values);
+	ffi_call(cif, method, &result, ffi_values);
 
 	HRESULT hr = (HRESULT)result;
 
@@ -553,15 +630,7 @@ jobject Environment::invoke( void* pComObject, ComMethod method, jobjectArray ar
 
 	// otherwise check the HRESULT first
 	if(FAILED(hr)) {
-		wchar_t* pmsg = NULL;
-		jobject str = NULL;
-		if(!FAILED(FormatMessageW(FORMAT_MESSAGE_ALLOCATE_BUFFER|FORMAT_MESSAGE_FROM_SYSTEM, NULL, hr, 0, (LPWSTR)&pmsg, 0, NULL ))) {
-			if(pmsg!=NULL) {
-				str = env->NewString(pmsg,(jsize)wcslen(pmsg));
-				LocalFree(pmsg);
-			}
-		}
-		env->Throw( (jthrowable)comexception_new_hr(env, str, (jint)hr, env->NewStringUTF(__FILE__), (jint)__LINE__ ) );
+		throwComException(env,hr);
 		if(retUnm!=NULL)	delete retUnm;
 		return NULL;
 	}
@@ -574,6 +643,138 @@ jobject Environment::invoke( void* pComObject, ComMethod method, jobjectArray ar
 	return r;
 }
 
+jlong invokeFrame( JNIEnv* env, void* pComObject, ComMethod method, char* frame, int paramLen, jint* convs, jint retConv, CallInterface* ci ) {
+	ffi_type** ffi_types = (ffi_type**)alloca((paramLen + 2) * sizeof(ffi_type*));
+	void** ffi_values = (void**)alloca((paramLen + 2) * sizeof(void*)); // +2: 1 for 'this' and 1 for return value
+	arg_value* c_args = (arg_value*)alloca((paramLen + 1) * sizeof(arg_value));
+	// GUIDs are copied out of the frame, since the frame is reused by the next call on this thread,
+	// which can happen before this call returns if the COM object calls back into Java.
+	GUID* guids = (GUID*)alloca((paramLen + 1) * sizeof(GUID));
+	jlong* args = reinterpret_cast<jlong*>(frame);
+
+	ffi_types[0] = &ffi_type_pointer;
+	ffi_values[0] = &pComObject;
+
+	for( int i=0; i<paramLen; i++ ) {
+		// the Java side has already unboxed the values. we just need to narrow them.
+		switch(convs[i]) {
+		case cvINT8:
+			c_args[i].v_int8 = (INT8)args[i];
+			ffi_types[i + 1] = &ffi_type_sint8;
+			ffi_values[i + 1] = &c_args[i].v_int8;
+			break;
+
+		case cvINT16:
+			c_args[i].v_int16 = (INT16)args[i];
+			ffi_types[i + 1] = &ffi_type_sint16;
+			ffi_values[i + 1] = &c_args[i].v_int16;
+			break;
+
+		case cvINT32:
+			c_args[i].v_int32 = (INT32)args[i];
+			ffi_types[i + 1] = &ffi_type_sint32;
+			ffi_values[i + 1] = &c_args[i].v_int32;
+			break;
+
+		case cvINT64:
+			c_args[i].v_int64 = args[i];
+			ffi_types[i + 1] = &ffi_type_sint64;
+			ffi_values[i + 1] = &c_args[i].v_int64;
+			break;
+
+		case cvBool:
+			c_args[i].v_int32 = args[i]!=0 ? TRUE : FALSE;
+			ffi_types[i + 1] = &ffi_type_sint;
+			ffi_values[i + 1] = &c_args[i].v_int32;
+			break;
+
+		case cvVariantBool:
+			c_args[i].v_int32 = args[i]!=0 ? VARIANT_TRUE : VARIANT_FALSE;
+			ffi_types[i + 1] = &ffi_type_sint;
+			ffi_values[i + 1] = &c_args[i].v_int32;
+			break;
+
+		case cvFloat:
+			{
+				INT32 bits = (INT32)args[i];
+				c_args[i].v_float = *reinterpret_cast<float*>(&bits);
+			}
+			ffi_types[i + 1] = &ffi_type_float;
+			ffi_values[i + 1] = &c_args[i].v_float;
+			break;
+
+		case cvDouble:
+			c_args[i].v_double = *reinterpret_cast<double*>(&args[i]);
+			ffi_types[i + 1] = &ffi_type_double;
+			ffi_values[i + 1] = &c_args[i].v_double;
+			break;
+
+		case cvComObject:
+			c_args[i].v_ptr = reinterpret_cast<void*>(args[i]);
+			ffi_types[i + 1] = &ffi_type_pointer;
+			ffi_values[i + 1] = &c_args[i].v_ptr;
+			break;
+
+		case cvGUID:
+			// the slot has the offset of the GUID in the frame
+			guids[i] = *reinterpret_cast<GUID*>(frame + args[i]);
+			c_args[i].v_ptr = &guids[i];
+			ffi_types[i + 1] = &ffi_type_pointer;
+			ffi_values[i + 1] = &c_args[i].v_ptr;
+			break;
+
+		default:
+			error(env,__FILE__,__LINE__,"unexpected conversion type: %d",convs[i]);
+			return 0;
+		}
+	}
+
+	int ffi_arg_count = paramLen + 1;
+
+	// the return value is the [out,retval] parameter that comes last.
+	// zero-clear it so that we can pass back the raw bits of a narrower type.
+	arg_value retval;
+	void* pRetval = &retval;
+	retval.v_int64 = 0;
+	if(retConv!=0) {
+		ffi_types[ffi_arg_count] = &ffi_type_pointer;
+		ffi_values[ffi_arg_count] = &pRetval;
+		ffi_arg_count++;
+	}
+
+	void* result;
+	ffi_cif localCif;
+	ffi_cif* cif = prepareCall(env, ci, &localCif, ffi_arg_count, ffi_types);
+	if (cif==NULL) {
+		return 0;
+	}
+	ffi_call(cif, method, &result, ffi_values);
+
+	HRESULT hr = (HRESULT)result;
+	if(FAILED(hr)) {
+		throwComException(env,hr);
+		return 0;
+	}
+
+	switch(retConv) {
+	case cvINT8:
+		return retval.v_int8;
+	case cvINT16:
+	case cvVariantBool:
+		return retval.v_int16;
+	case cvINT32:
+	case cvBool:
+		return retval.v_int32;
+	case cvFloat:
+		return *reinterpret_cast<INT32*>(&retval.v_float);
+	case cvComObject:
+		return reinterpret_cast<jlong>(retval.v_ptr);
+	default:
+		// INT64, double, or no return value
+		return retval.v_int64;
+	}
+}
+
 void Environment::add( PostAction* a ) {
 	a->next = postActions;
 	postActions = a;
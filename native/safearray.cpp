@@ -13,12 +13,15 @@ struct Entry {
 	VARTYPE vt;
 	SAFEARRAY* (* toNative)( JNIEnv* env, jarray javaArray );
 	jarray (* toJava)( JNIEnv* env, SAFEARRAY* nativeArray );
+	jarray (* toJavaFlat)( JNIEnv* env, SAFEARRAY* nativeArray );
+	SAFEARRAY* (* toNativeFlat)( JNIEnv* env, jarray javaArray, int dim, SAFEARRAYBOUND* bounds );
 };
 
 JClassID variantArray("[Lcom4j/Variant;");
 
 #define TABLE_ENTRY_PRIMITIVE(type, VariantType, NativeType) \
-{  &type##Array, VariantType, PrimitiveArrayXducer<VariantType,NativeType,j##type>::toNative, PrimitiveArrayXducer<VariantType,NativeType,j##type>::toJava }
+{  &type##Array, VariantType, PrimitiveArrayXducer<VariantType,NativeType,j##type>::toNative, PrimitiveArrayXducer<VariantType,NativeType,j##type>::toJava, \
+	FlatArrayXducer<VariantType,xducer::IdentityXducer<NativeType,j##type> >::toJava, FlatArrayXducer<VariantType,xducer::IdentityXducer<NativeType,j##type> >::toNative }
 
 // conversion table
 static Entry entries[] = {
@@ -30,9 +33,12 @@ static Entry entries[] = {
 	TABLE_ENTRY_PRIMITIVE(int,		VT_I4,		INT32),
 	TABLE_ENTRY_PRIMITIVE(long,		VT_I8,		INT64),
 	TABLE_ENTRY_PRIMITIVE(short,	VT_I2,		short),
-	{ &stringArray,		VT_BSTR,	BasicArrayXducer<VT_BSTR,xducer::StringXducer>::toNative,		BasicArrayXducer<VT_BSTR,xducer::StringXducer>::toJava},
-	{ &objectArray,		VT_VARIANT,	BasicArrayXducer<VT_VARIANT,xducer::VariantXducer>::toNative,	BasicArrayXducer<VT_VARIANT,xducer::VariantXducer>::toJava},
-	{ &variantArray,	VT_VARIANT,	BasicArrayXducer<VT_VARIANT,xducer::VariantXducer>::toNative,	BasicArrayXducer<VT_VARIANT,xducer::VariantXducer>::toJava},
+	{ &stringArray,		VT_BSTR,	BasicArrayXducer<VT_BSTR,xducer::StringXducer>::toNative,		BasicArrayXducer<VT_BSTR,xducer::StringXducer>::toJava,
+		FlatArrayXducer<VT_BSTR,xducer::StringXducer>::toJava,		FlatArrayXducer<VT_BSTR,xducer::StringXducer>::toNative },
+	{ &objectArray,		VT_VARIANT,	BasicArrayXducer<VT_VARIANT,xducer::VariantXducer>::toNative,	BasicArrayXducer<VT_VARIANT,xducer::VariantXducer>::toJava,
+		FlatArrayXducer<VT_VARIANT,xducer::VariantXducer>::toJava,	FlatArrayXducer<VT_VARIANT,xducer::VariantXducer>::toNative },
+	{ &variantArray,	VT_VARIANT,	BasicArrayXducer<VT_VARIANT,xducer::VariantXducer>::toNative,	BasicArrayXducer<VT_VARIANT,xducer::VariantXducer>::toJava,
+		FlatArrayXducer<VT_VARIANT,xducer::VariantXducer>::toJava,	FlatArrayXducer<VT_VARIANT,xducer::VariantXducer>::toNative },
 	{ NULL, NULL, NULL }
 };
 
@@ -79,3 +85,41 @@ SafeArrayXducer::JavaType SafeArrayXducer::toJava( JNIEnv* env, SAFEARRAY* value
 	}
 	return NULL;
 }
+
+SafeArrayXducer::JavaType SafeArrayXducer::toJavaFlat( JNIEnv* env, SAFEARRAY* value ) {
+	WORD feature = value->fFeatures;
+
+	if((feature&FADF_BSTR)!=0)
+		return FlatArrayXducer<VT_BSTR,xducer::StringXducer>::toJava(env,value);
+	if((feature&(FADF_UNKNOWN|FADF_DISPATCH))!=0)
+		return FlatArrayXducer<VT_UNKNOWN,xducer::Com4jObjectXducer>::toJava(env,value);
+	if((feature&FADF_VARIANT)!=0)
+		return FlatArrayXducer<VT_VARIANT,xducer::VariantXducer>::toJava(env,value);
+	if((feature&FADF_HAVEVARTYPE) != 0)
+	{
+		VARTYPE elemType;
+		SafeArrayGetVartype(value, &elemType);
+		for( Entry* e=entries; e->clazz!=NULL; e++ ) {
+			if(elemType==e->vt)
+				return e->toJavaFlat(env,value);
+		}
+	}
+	return NULL;
+}
+
+SafeArrayXducer::NativeType SafeArrayXducer::toNativeFlat(
+	JNIEnv* env, SafeArrayXducer::JavaType a, int dim, SAFEARRAYBOUND* bounds ) {
+
+	jclass clz = env->GetObjectClass(a);
+
+	for( Entry* e=entries; e->clazz!=NULL; e++ ) {
+		if(env->IsSameObject(clz,*(e->clazz)))
+			return (e->toNativeFlat)(env,a,dim,bounds);
+	}
+
+	// other arrays of objects become SAFEARRAY(VARIANT)
+	if (env->IsInstanceOf(a, objectArray))
+		return FlatArrayXducer<VT_VARIANT,xducer::VariantXducer>::toNative(env,a,dim,bounds);
+
+	return NULL;
+}
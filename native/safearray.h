@@ -22,6 +22,12 @@ namespace safearray {
 		static pair<NativeType,VARTYPE> toNative2( JNIEnv* env, JavaType a );
 
 		static JavaType toJava( JNIEnv* env, NativeType value );
+
+		// converts between a SAFEARRAY of any dimension and a flat Java array
+		// that has all the elements in the order they are laid out in the SAFEARRAY.
+		// see FlatArrayXducer
+		static JavaType toJavaFlat( JNIEnv* env, NativeType value );
+		static NativeType toNativeFlat( JNIEnv* env, JavaType a, int dim, SAFEARRAYBOUND* bounds );
 	};
 
 	// Transducer that turns a Java array into SAFEARRAY
@@ -157,6 +163,63 @@ namespace safearray {
 
 
 
+	// Transducer between a SAFEARRAY of any dimension and a flat Java array.
+	//
+	// unlike ToJavaMultiDimlArrayMarshaller, this creates just one Java array,
+	// and the elements are copied in one pass, in the order they are laid out in the SAFEARRAY.
+	// For primitive arrays, that's a plain memory copy.
+	//
+	// itemType : array item type
+	// XDUCER : converter for each array item
+	template < VARTYPE itemType, class XDUCER >
+	class FlatArrayXducer {
+		typedef array::Array<typename XDUCER::JavaType> JARRAY;
+	public:
+		static jarray toJava( JNIEnv* env, SAFEARRAY* psa ) {
+			int length = 1;
+			for( int i=1; i<=SafeArrayGetDim(psa); i++ ) {
+				long lbound,ubound;
+				SafeArrayGetLBound(psa,i,&lbound);
+				SafeArrayGetUBound(psa,i,&ubound);
+				length *= max(0,ubound-lbound+1);
+			}
+
+			JARRAY::ARRAY a = JARRAY::newArray(env,length);
+			XDUCER::JavaType* const pDst = JARRAY::lock(env,a);
+			XDUCER::NativeType* pSrc;
+			SafeArrayAccessData( psa, reinterpret_cast<void**>(&pSrc) );
+
+			for( int i=0; i<length; i++ )
+				pDst[i] = XDUCER::toJava(env,pSrc[i]);
+
+			SafeArrayUnaccessData( psa );
+			JARRAY::unlock(env,a,pDst);
+			return a;
+		}
+
+		// the caller makes sure that the length of the Java array matches the bounds
+		static SAFEARRAY* toNative( JNIEnv* env, jarray javaArray, int dim, SAFEARRAYBOUND* bounds ) {
+			const int length = env->GetArrayLength(javaArray);
+
+			SAFEARRAY* psa = SafeArrayCreate(itemType,dim,bounds);
+			if(psa==NULL)
+				return NULL;
+
+			XDUCER::JavaType* pSrc = JARRAY::lock(env,static_cast<JARRAY::ARRAY>(javaArray));
+			XDUCER::NativeType* pDst;
+			SafeArrayAccessData( psa, reinterpret_cast<void**>(&pDst) );
+
+			for( int i=0; i<length; i++ )
+				pDst[i] = XDUCER::toNative(env,pSrc[i]);
+
+			SafeArrayUnaccessData( psa );
+			JARRAY::unlock(env,static_cast<JARRAY::ARRAY>(javaArray),pSrc);
+			return psa;
+		}
+	};
+
+
+
 	// Transducer that turns a Java multi dimensinal array into SAFEARRAY
 	//
 	// itemType : array item type
@@ -35,7 +35,7 @@ JNIEXPORT void JNICALL Java_com4j_Variant_changeType0(JNIEnv* env, jclass, jint
 	VariantChangeType( env, (VARIANT*)env->GetDirectBufferAddress(image), (VARTYPE)type );
 }
 
-JNIEXPORT jobject JNICALL Java_com4j_Variant_convertTo(JNIEnv* env, jobject instance, jclass target) {
+JNIEXPORT jobject JNICALL Java_com4j_Variant_convertTo0(JNIEnv* env, jobject instance, jclass target) {
 	try {
 		VARIANT* v = com4jVariantToVARIANT(env,instance);
 		while(v->vt & VT_BYREF) // unpeel VT_BYREF to get to the nested VARIANT
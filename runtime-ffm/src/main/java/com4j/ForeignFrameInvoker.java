@@ -0,0 +1,198 @@
+package com4j;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_DOUBLE;
+import static java.lang.foreign.ValueLayout.JAVA_FLOAT;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+import static java.lang.foreign.ValueLayout.JAVA_LONG_UNALIGNED;
+import static java.lang.foreign.ValueLayout.JAVA_SHORT;
+
+/**
+ * {@link FrameInvoker} that calls the COM methods through {@code java.lang.foreign} downcall handles
+ * instead of the JNI DLL and libffi.
+ *
+ * <p>
+ * The function is read from the vtable of the interface pointer, and called through a
+ * {@link MethodHandle} that takes the function address as its first argument. So the methods
+ * of the same signature share one handle, whatever interface and vtable index they have.
+ * The frame is decoded exactly as {@code invokeFrame} in {@code invoke.cpp} does.
+ *
+ * <p>
+ * The calls are made with the default calling convention of the platform, which is the
+ * one COM uses on 64-bit Windows. The JVM needs {@code --enable-native-access} for the
+ * class path, or it warns about the restricted methods used here.
+ */
+final class ForeignFrameInvoker extends FrameInvoker {
+    // conversion codes, as in com4j.h
+    private static final int cvINT8 = 100;
+    private static final int cvINT16 = 101;
+    private static final int cvINT32 = 102;
+    private static final int cvBool = 103;
+    private static final int cvVariantBool = 104;
+    private static final int cvINT64 = 105;
+    private static final int cvFloat = 120;
+    private static final int cvDouble = 121;
+    private static final int cvComObject = 300;
+    private static final int cvGUID = 301;
+
+    private static final short VARIANT_TRUE = -1;
+
+    private static final Linker LINKER = Linker.nativeLinker();
+
+    /**
+     * Downcall handles keyed by the signature, spread to take their arguments in an {@code Object[]}.
+     */
+    private final ConcurrentMap<Signature,MethodHandle> handles = new ConcurrentHashMap<>();
+
+    long invoke(long pComObject, long vtIndex, ByteBuffer frame, int[] parameterConversions, int returnConversion, long callInterface) {
+        MethodHandle handle = getHandle(parameterConversions, returnConversion);
+
+        MemorySegment self = MemorySegment.ofAddress(pComObject).reinterpret(ADDRESS.byteSize());
+        MemorySegment vtable = self.get(ADDRESS, 0).reinterpret((vtIndex+1)*ADDRESS.byteSize());
+        MemorySegment function = vtable.getAtIndex(ADDRESS, vtIndex);
+
+        MemorySegment args = MemorySegment.ofBuffer(frame);
+        int n = parameterConversions.length;
+        try (Arena arena = Arena.ofConfined()) {
+            Object[] a = new Object[n + (returnConversion!=0 ? 3 : 2)];
+            a[0] = function;
+            a[1] = self;
+            for( int i=0; i<n; i++ )
+                a[i+2] = toNative(parameterConversions[i], args.get(JAVA_LONG_UNALIGNED, i*8L), args, arena);
+
+            // zero-cleared, so that we can pass back the raw bits of a narrower type
+            MemorySegment retval = null;
+            if(returnConversion!=0) {
+                retval = arena.allocate(JAVA_LONG);
+                retval.set(JAVA_LONG, 0, 0L);
+                a[n+2] = retval;
+            }
+
+            int hr;
+            try {
+                hr = (int)handle.invokeExact(a);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new ExecutionException(e);
+            }
+            if(hr<0)
+                throw new ComException(null, hr);
+
+            if(retval==null)
+                return 0;
+            return switch(returnConversion) {
+                case cvINT8 -> retval.get(JAVA_BYTE, 0);
+                case cvINT16, cvVariantBool -> retval.get(JAVA_SHORT, 0);
+                case cvINT32, cvBool, cvFloat -> retval.get(JAVA_INT, 0);
+                case cvComObject -> retval.get(ADDRESS, 0).address();
+                default -> retval.get(JAVA_LONG, 0);    // INT64 or double
+            };
+        }
+    }
+
+    /**
+     * Narrows the raw bits of an argument, boxed as the downcall handle expects it.
+     */
+    private static Object toNative(int conv, long bits, MemorySegment frame, Arena arena) {
+        switch(conv) {
+        case cvINT8:        return (byte)bits;
+        case cvINT16:       return (short)bits;
+        case cvINT32:       return (int)bits;
+        case cvINT64:       return bits;
+        case cvBool:        return bits!=0 ? 1 : 0;
+        case cvVariantBool: return bits!=0 ? (int)VARIANT_TRUE : 0;
+        case cvFloat:       return Float.intBitsToFloat((int)bits);
+        case cvDouble:      return Double.longBitsToDouble(bits);
+        case cvComObject:   return MemorySegment.ofAddress(bits);
+        case cvGUID:
+            // the slot has the offset of the GUID in the frame.
+            // copy it out, since the frame is reused if the COM object calls back into Java
+            return arena.allocate(16, 8).copyFrom(frame.asSlice(bits, 16));
+        default:
+            throw new IllegalArgumentException("unexpected conversion type: "+conv);
+        }
+    }
+
+    private MethodHandle getHandle(int[] parameterConversions, int returnConversion) {
+        Signature s = new Signature(parameterConversions, returnConversion);
+        MethodHandle h = handles.get(s);
+        if(h==null) {
+            h = createHandle(parameterConversions, returnConversion);
+            MethodHandle old = handles.putIfAbsent(s, h);
+            if(old!=null)
+                h = old;
+        }
+        return h;
+    }
+
+    private static MethodHandle createHandle(int[] parameterConversions, int returnConversion) {
+        int n = parameterConversions.length;
+        MemoryLayout[] layouts = new MemoryLayout[n + (returnConversion!=0 ? 2 : 1)];
+        layouts[0] = ADDRESS;   // this
+        for( int i=0; i<n; i++ )
+            layouts[i+1] = layoutOf(parameterConversions[i]);
+        if(returnConversion!=0)
+            layouts[n+1] = ADDRESS; // [out,retval]
+
+        MethodHandle h = LINKER.downcallHandle(FunctionDescriptor.of(JAVA_INT, layouts));
+        // +1 for the function address
+        return h.asSpreader(Object[].class, layouts.length+1)
+                .asType(MethodType.methodType(int.class, Object[].class));
+    }
+
+    private static MemoryLayout layoutOf(int conv) {
+        switch(conv) {
+        case cvINT8:        return JAVA_BYTE;
+        case cvINT16:       return JAVA_SHORT;
+        case cvINT32:
+        case cvBool:
+        case cvVariantBool: return JAVA_INT;
+        case cvINT64:       return JAVA_LONG;
+        case cvFloat:       return JAVA_FLOAT;
+        case cvDouble:      return JAVA_DOUBLE;
+        case cvComObject:
+        case cvGUID:        return ADDRESS;
+        default:
+            throw new IllegalArgumentException("unexpected conversion type: "+conv);
+        }
+    }
+
+    /**
+     * The conversions of a method, which determine its native signature.
+     */
+    private static final class Signature {
+        private final int[] parameterConversions;
+        private final int returnConversion;
+
+        Signature(int[] parameterConversions, int returnConversion) {
+            this.parameterConversions = parameterConversions;
+            this.returnConversion = returnConversion;
+        }
+
+        public boolean equals(Object o) {
+            if(!(o instanceof Signature))   return false;
+            Signature that = (Signature)o;
+            return returnConversion==that.returnConversion
+                && Arrays.equals(parameterConversions, that.parameterConversions);
+        }
+
+        public int hashCode() {
+            return Arrays.hashCode(parameterConversions)*31+returnConversion;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com4j;
+
+import junit.framework.TestCase;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_DOUBLE;
+import static java.lang.foreign.ValueLayout.JAVA_FLOAT;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+import static java.lang.foreign.ValueLayout.JAVA_SHORT;
+
+/**
+ * Tests {@link ForeignFrameInvoker} against a fake COM object, whose vtable is made of upcall stubs,
+ * so that it runs on any platform.
+ */
+public class ForeignFrameInvokerTest extends TestCase {
+    private static final int E_FAIL = 0x80004005;
+
+    private Arena arena;
+
+    /**
+     * The interface pointer of the fake object.
+     */
+    private long object;
+
+    private final ForeignFrameInvoker invoker = new ForeignFrameInvoker();
+
+    private final ByteBuffer frame = ByteBuffer.allocateDirect(256).order(ByteOrder.nativeOrder());
+
+    protected void setUp() throws Exception {
+        arena = Arena.ofConfined();
+        MemorySegment[] methods = {
+            stub("add", FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, JAVA_LONG, ADDRESS)),
+            stub("multiply", FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_DOUBLE, JAVA_FLOAT, ADDRESS)),
+            stub("guid", FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_SHORT, ADDRESS)),
+            stub("and", FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, JAVA_INT, ADDRESS)),
+            stub("error", FunctionDescriptor.of(JAVA_INT, ADDRESS)),
+            stub("self", FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS)),
+        };
+        MemorySegment vtable = arena.allocate(ADDRESS, methods.length);
+        for( int i=0; i<methods.length; i++ )
+            vtable.setAtIndex(ADDRESS, i, methods[i]);
+        MemorySegment o = arena.allocate(ADDRESS);
+        o.set(ADDRESS, 0, vtable);
+        object = o.address();
+    }
+
+    protected void tearDown() {
+        arena.close();
+    }
+
+    private MemorySegment stub(String name, FunctionDescriptor d) throws Exception {
+        MethodHandle h = MethodHandles.lookup().findStatic(ForeignFrameInvokerTest.class, name, d.toMethodType());
+        return Linker.nativeLinker().upcallStub(h, d, arena);
+    }
+
+    public void testIntegers() {
+        frame.putLong(0, -3);
+        frame.putLong(8, 1L<<40);
+        long r = invoker.invoke(object, 0, frame,
+            new int[]{NativeType.Int32.code, NativeType.Int64.code}, NativeType.Int64.code, 0);
+        assertEquals((1L<<40)-3, r);
+    }
+
+    public void testFloatingPoint() {
+        frame.putLong(0, Double.doubleToRawLongBits(1.5));
+        frame.putLong(8, Float.floatToRawIntBits(4f));
+        long r = invoker.invoke(object, 1, frame,
+            new int[]{NativeType.Double.code, NativeType.Float.code}, NativeType.Double.code, 0);
+        assertEquals(6.0, Double.longBitsToDouble(r), 0);
+    }
+
+    public void testGUID() {
+        // the slot has the offset of the GUID, which comes after the slots
+        frame.putLong(0, 16);
+        frame.putLong(8, 7);
+        frame.putLong(16, 100);
+        frame.putLong(24, 20);
+        long r = invoker.invoke(object, 2, frame,
+            new int[]{NativeType.GUID.code, NativeType.Int16.code}, NativeType.Int32.code, 0);
+        assertEquals(127, r);
+    }
+
+    public void testBooleans() {
+        frame.putLong(0, 1);
+        frame.putLong(8, 1);
+        long r = invoker.invoke(object, 3, frame,
+            new int[]{NativeType.Bool.code, NativeType.VariantBool.code}, NativeType.VariantBool.code, 0);
+        assertEquals(-1, r);   // VARIANT_TRUE
+
+        frame.putLong(8, 0);
+        r = invoker.invoke(object, 3, frame,
+            new int[]{NativeType.Bool.code, NativeType.VariantBool.code}, NativeType.VariantBool.code, 0);
+        assertEquals(0, r);
+    }
+
+    public void testFailure() {
+        try {
+            invoker.invoke(object, 4, frame, new int[0], 0, 0);
+            fail();
+        } catch (ComException e) {
+            assertEquals(E_FAIL, e.getHRESULT());
+        }
+    }
+
+    public void testInterfacePointer() {
+        long r = invoker.invoke(object, 5, frame, new int[0], NativeType.ComObject.code, 0);
+        assertEquals(object, r);
+    }
+
+    // the methods of the fake object
+
+    static int add(MemorySegment self, int a, long b, MemorySegment retval) {
+        retval.reinterpret(8).set(JAVA_LONG, 0, a+b);
+        return 0;
+    }
+
+    static int multiply(MemorySegment self, double a, float b, MemorySegment retval) {
+        retval.reinterpret(8).set(JAVA_DOUBLE, 0, a*b);
+        return 0;
+    }
+
+    static int guid(MemorySegment self, MemorySegment guid, short s, MemorySegment retval) {
+        MemorySegment g = guid.reinterpret(16);
+        retval.reinterpret(4).set(JAVA_INT, 0, (int)(g.get(JAVA_LONG, 0)+g.get(JAVA_LONG, 8))+s);
+        return 0;
+    }
+
+    static int and(MemorySegment self, int bool, int variantBool, MemorySegment retval) {
+        retval.reinterpret(2).set(JAVA_SHORT, 0, (short)(bool==1 && variantBool==-1 ? -1 : 0));
+        return 0;
+    }
+
+    static int error(MemorySegment self) {
+        return E_FAIL;
+    }
+
+    static int self(MemorySegment self, MemorySegment retval) {
+        retval.reinterpret(ADDRESS.byteSize()).set(ADDRESS, 0, self);
+        return 0;
+    }
+}
@@ -0,0 +1,32 @@
+package com4j;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * {@link Iterator} that can also hand out the elements in batches.
+ *
+ * <p>
+ * The {@link Iterator}s that com4j returns for COM collections (<tt>IEnumVARIANT</tt>)
+ * implement this interface. Their elements are fetched and converted in batches anyway,
+ * so taking a whole batch at once avoids the per-element overhead. They are also thread-safe,
+ * so multiple threads can share one iterator, each taking a batch at a time to work on:
+ * <pre>
+ * BatchIterator&lt;IFoo&gt; itr = (BatchIterator&lt;IFoo&gt;)collection.iterator();
+ * List&lt;IFoo&gt; batch;
+ * while(!(batch=itr.nextBatch()).isEmpty()) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * @param <T> the type of the elements
+ */
+public interface BatchIterator<T> extends Iterator<T> {
+    /**
+     * Returns the elements that are already fetched, or the next batch if there are none.
+     *
+     * @return
+     *      an empty list if there are no more elements.
+     */
+    List<T> nextBatch();
+}
@@ -6,13 +6,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.lang.reflect.Proxy;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -94,9 +95,37 @@ public abstract class COM4J {
      */
     public static<T extends Com4jObject>
     T createInstance( Class<T> primaryInterface, String clsid, int clsctx ) throws ComException {
+        return createInstance(primaryInterface,clsid,clsctx,primaryInterface.isAnnotationPresent(FreeThreaded.class));
+    }
+
+    /**
+     * Creates a new COM object of the given CLSID and returns
+     * it in a wrapped interface.
+     *
+     * <p>
+     * Compared to {@link #createInstance(Class,String,int)},
+     * this method allows the caller to create a free-threaded object without
+     * putting {@link FreeThreaded} on the interface.
+     *
+     * @param primaryInterface type parameter of the primaryInterface type
+     * @param clsid a string representation of the class id
+     * @param clsctx Normally this is {@link CLSCTX#ALL}, but can be any combination of {@link CLSCTX} constants.
+     * @param freeThreaded True to create the object in the multi-threaded apartment and call it directly
+     *      from the calling threads. Only use this for classes registered as "Free" or "Both".
+     * @param <T> the type of the return value and the type parameter of the class object of primaryInterface
+     * @return the new instance of the COM object
+     * @throws ComException if an error occurred in the native COM part
+     *
+     * @see FreeThreaded
+     */
+    public static<T extends Com4jObject>
+    T createInstance( Class<T> primaryInterface, String clsid, int clsctx, boolean freeThreaded ) throws ComException {
 
         // create instance
-        return new CreateInstanceTask<T>(clsid,clsctx,primaryInterface).execute();
+        CreateInstanceTask<T> task = new CreateInstanceTask<T>(clsid,clsctx,primaryInterface);
+        if(freeThreaded)
+            return task.execute(ComThreadMulti.getMTA());
+        return task.execute();
     }
 
     /**
@@ -356,6 +385,82 @@ public abstract class COM4J {
         }.execute();
     }
 
+    /**
+     * Runs the given code in the {@link ComThread} that owns the given object and returns its result.
+     *
+     * <p>
+     * Normally every method invocation on a {@link Com4jObject} is a round trip between
+     * the calling thread and the {@link ComThread}. Method calls made from within {@code task}
+     * on objects that belong to the same {@link ComThread} are executed directly, so
+     * a block of N calls costs one round trip instead of N. For example:
+     * <pre>
+     * final ISWbemObject obj = ...;
+     * String[] props = COM4J.onComThread(obj, new Callable&lt;String[]>() {
+     *     public String[] call() {
+     *         return new String[] { read(obj,"Name"), read(obj,"Caption"), read(obj,"Status") };
+     *     }
+     * });
+     * </pre>
+     *
+     * <p>
+     * Calls on objects owned by other {@link ComThread}s still work from within the task,
+     * but they go through their own threads as usual. Since the {@link ComThread} can't do
+     * anything else while running {@code task}, keep the task short.
+     *
+     * @param owner
+     *      The object whose {@link ComThread} runs the task. Must be non-null.
+     * @param task
+     *      The code to run.
+     * @param <T> the type of the return value of the task
+     * @return the value returned from the task.
+     * @throws ComException if the task fails with {@link ComException}.
+     * @throws ExecutionException if the task fails with other exceptions,
+     *      which become its cause unless they are {@link ExecutionException}s themselves.
+     *      {@link Error}s are thrown as they are.
+     *      This is the same whether or not the current thread is already the {@link ComThread}.
+     *
+     * @see #submit(Com4jObject, Callable)
+     */
+    public static <T> T onComThread( Com4jObject owner, Callable<T> task ) {
+        return Task.callIn(owner.getComThread(),task);
+    }
+
+    /**
+     * Runs the given code asynchronously in the {@link ComThread} that owns the given object.
+     *
+     * <p>
+     * This method returns right away, so a single application thread can queue up
+     * many independent COM calls without blocking for each one of them. Method calls
+     * made from within {@code task} on objects that belong to the same {@link ComThread}
+     * are executed directly, without another round trip between threads.
+     * Tasks submitted against the same {@link ComThread} are run in the order they were submitted.
+     *
+     * <p>
+     * For example:
+     * <pre>
+     * final IWorksheet sheet = ...;
+     * Future&lt;Object> f = COM4J.submit(sheet, new Callable&lt;Object>() {
+     *     public Object call() {
+     *         return sheet.getRange("A1").getValue();
+     *     }
+     * });
+     * ... do something else ...
+     * Object v = f.get();
+     * </pre>
+     *
+     * @param owner
+     *      The object whose {@link ComThread} runs the task. Must be non-null.
+     * @param task
+     *      The code to run. Exceptions thrown from here are reported through the returned {@link Future}.
+     * @param <T> the type of the return value of the task
+     * @return the {@link Future} that receives the result of the task.
+     *
+     * @see ComThread#submit(Callable)
+     */
+    public static <T> Future<T> submit( Com4jObject owner, Callable<T> task ) {
+        return owner.getComThread().submit(task);
+    }
+
     /**
      * Maps the memory region into {@link ByteBuffer} so that it can be
      * then accessed nicely from Java code.
@@ -432,6 +537,23 @@ public abstract class COM4J {
         ComThreadSingle.get().removeListener(listener);
     }
 
+    /**
+     * Disposes many COM objects at once.
+     *
+     * <p>
+     * This is equivalent to calling {@link Com4jObject#dispose()} on each object,
+     * except that the objects are grouped by the {@link ComThread} they belong to,
+     * and each group is disposed by one task, instead of one task per object.
+     *
+     * @param objects
+     *      The objects to dispose. Null elements and objects that are already disposed are skipped.
+     * @return
+     *      The number of objects disposed by this call.
+     */
+    public static int disposeAll( Iterable<? extends Com4jObject> objects ) {
+        return ComScope.disposeAll(objects);
+    }
+
     /**
      * Cleans up COM resources for the current thread.
      *
@@ -441,6 +563,8 @@ public abstract class COM4J {
      * </p>
      *
      * In COM terminology, this effectively amounts to calling {@code CoUninitialize}.
+     * When the {@link #getComThreadPool() pool} is enabled, the apartment is shared
+     * with other threads, so only the COM objects created by this thread are released.
      *
      * After this method is invoked, a thread can still go use other COM resources.
      */
@@ -449,6 +573,20 @@ public abstract class COM4J {
         ComThreadSingle.detach();
     }
 
+    /**
+     * Returns the pool of COM threads shared by the application threads.
+     *
+     * <p>
+     * The pool is enabled by setting the {@code com4j.comThreadPoolSize} system property
+     * to the maximum number of COM threads. Without it, com4j creates one COM thread
+     * per application thread that uses COM.
+     *
+     * @return null if the pool is not enabled.
+     */
+    public static ComThreadPool getComThreadPool() {
+        return ComThreadPool.INSTANCE;
+    }
+
     /**
      * List of application defined task, they are executed _before_ com4j shuts down.
      */
@@ -541,10 +679,7 @@ public abstract class COM4J {
      * TODO: Think about whether to remove this method or mark it as deprecated, since this method is not used any more by Com4J itself
      */
     static Wrapper unwrap( Com4jObject obj ) {
-        if( obj instanceof Wrapper )
-            return (Wrapper)obj;
-        else
-            return (Wrapper)Proxy.getInvocationHandler(obj);
+        return Wrapper.unwrap(obj);
     }
 
     /**
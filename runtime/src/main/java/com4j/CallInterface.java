@@ -0,0 +1,78 @@
+package com4j;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+
+/**
+ * Owns the native structure that keeps the prepared call of a {@link StandardComMethod}.
+ *
+ * <p>
+ * The structure is freed once its method is garbage collected. A {@link PhantomReference}
+ * is used rather than a finalizer, the same way {@link VariantAllocator} recycles VARIANTs,
+ * and the structures of the collected methods are freed when the next one is allocated,
+ * or when a {@link ComThread} collects its garbage.
+ *
+ * @see Native#createCallInterface()
+ */
+final class CallInterface extends PhantomReference<StandardComMethod> {
+    /**
+     * The native structure.
+     */
+    final long ptr;
+
+    private CallInterface prev,next;
+
+    /**
+     * Sentinel of the doubly-linked list of the structures in use,
+     * which keeps the {@link PhantomReference}s reachable. Also the lock of the list.
+     */
+    private static final CallInterface live = new CallInterface();
+
+    private static final ReferenceQueue<StandardComMethod> collected = new ReferenceQueue<StandardComMethod>();
+
+    private CallInterface(StandardComMethod owner, long ptr) {
+        super(owner,collected);
+        this.ptr = ptr;
+    }
+
+    /**
+     * Creates the sentinel.
+     */
+    private CallInterface() {
+        super(null,null);
+        this.ptr = 0;
+        prev = next = this;
+    }
+
+    /**
+     * Allocates the structure of the given method, which is freed once the method is gone.
+     */
+    static long allocate(StandardComMethod owner) {
+        collectGarbage();
+
+        CallInterface ci = new CallInterface(owner,Native.createCallInterface());
+        synchronized(live) {
+            ci.next = live.next;
+            ci.prev = live;
+            live.next.prev = ci;
+            live.next = ci;
+        }
+        return ci.ptr;
+    }
+
+    /**
+     * Frees the structures of the methods that are garbage collected.
+     * The structures aren't tied to any thread, so this can be called from anywhere.
+     */
+    static void collectGarbage() {
+        CallInterface ci;
+        while((ci=(CallInterface)collected.poll())!=null) {
+            synchronized(live) {
+                ci.prev.next = ci.next;
+                ci.next.prev = ci.prev;
+                ci.prev = ci.next = null;
+            }
+            Native.deleteCallInterface(ci.ptr);
+        }
+    }
+}
@@ -2,16 +2,57 @@ package com4j;
 
 import com4j.stdole.IEnumVARIANT;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Future;
 
 /**
  * Wraps IEnumVARIANT and implements {@link Iterator}.
  *
+ * <p>
+ * Elements are fetched in batches, so that one <tt>IEnumVARIANT::Next</tt> call and one trip
+ * to the {@link ComThread} serve many elements. The batch size is set by the
+ * <tt>com4j.enumBatchSize</tt> system property (64 by default). If the <tt>com4j.enumPrefetch</tt>
+ * system property is set, the next batch is fetched in the background
+ * while the current one is consumed.
+ *
+ * <p>
+ * Elements of any type that {@link Variant#convertTo(Class)} can handle are supported.
+ * The methods are synchronized, so that multiple threads can share one iterator
+ * and take {@link #nextBatch() batches} of elements to process them in parallel.
+ *
  * @author Kohsuke Kawaguchi
  * @author Michael Schnell (ScM, (C) 2008, 2009, Michael-Schnell@gmx.de)
  */
-final class ComCollection<T> implements Iterator<T> {
+final class ComCollection<T> implements BatchIterator<T> {
+
+    /**
+     * Number of elements fetched by one IEnumVARIANT::Next call.
+     */
+    static final int BATCH_SIZE;
+
+    /**
+     * True to fetch the next batch in the background.
+     */
+    static final boolean PREFETCH;
+
+    static {
+        int size = 64;
+        boolean prefetch = false;
+        try {
+            size = Integer.getInteger("com4j.enumBatchSize",size);
+            prefetch = Boolean.getBoolean("com4j.enumPrefetch");
+        } catch (SecurityException e) {
+            ;
+        }
+        BATCH_SIZE = Math.max(1,size);
+        PREFETCH = prefetch;
+    }
 
     /**
      * The wrapped IEnumVARIANT
@@ -19,16 +60,44 @@ final class ComCollection<T> implements Iterator<T> {
     private final IEnumVARIANT e;
 
     /**
-     * The prefetched next VARIANT element
+     * The thread for which the IEnumVARIANT was marshaled.
+     * The elements need to be interpreted in the same thread.
      */
-    private Variant next;
-
+    private final ComThread thread;
 
     /**
      * The expected item type.
      */
     private final Class<T> type;
 
+    /**
+     * The contiguous array of VARIANTs that IEnumVARIANT::Next fills.
+     * Only used from {@link #thread}.
+     */
+    private final ByteBuffer buf;
+
+    /**
+     * A VARIANT moved out of {@link #buf} while it's converted.
+     * Only used from {@link #thread}.
+     */
+    private final Variant scratch;
+
+    /**
+     * The converted elements of the current batch, and the index of the next one.
+     */
+    private Object[] items;
+    private int index;
+
+    /**
+     * True once IEnumVARIANT returned no more elements.
+     */
+    private boolean exhausted;
+
+    /**
+     * The next batch being fetched in the background, if any.
+     */
+    private Future<Object[]> pending;
+
     /**
      * Constructs a new ComCollection
      * @param type The class object of the type
@@ -37,29 +106,39 @@ final class ComCollection<T> implements Iterator<T> {
     ComCollection(Class<T> type, IEnumVARIANT e) {
         this.e = e;
         this.type = type;
-        this.next = new Variant();
+        this.thread = e.getComThread();
+        this.scratch = new Variant(true);
+        this.buf = ByteBuffer.allocateDirect(BATCH_SIZE*scratch.image.capacity()).order(ByteOrder.LITTLE_ENDIAN);
         fetch();
     }
 
-    public boolean hasNext() {
-        return next!=null;
+    public synchronized boolean hasNext() {
+        return index<items.length;
     }
 
     @SuppressWarnings("unchecked")
-    public T next() {
-        if(next==null)
+    public synchronized T next() {
+        if(index==items.length)
             throw new NoSuchElementException();
 
-        try {
-            // ideally we'd like to use ChangeVariantType to do the conversion
-            // but for now let's just support interface types
-            if(Com4jObject.class.isAssignableFrom(type)) {
-                return (T)next.object((Class<? extends Com4jObject>)type);
-            } else
-                throw new UnsupportedOperationException("I don't know how to handle "+type);
-        } finally {
+        Object r = items[index];
+        items[index++] = null;
+        if(index==items.length)
             fetch();
-        }
+        return (T)r;
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized List<T> nextBatch() {
+        if(index==items.length)
+            return Collections.emptyList();
+
+        Object[] r = items;
+        if(index>0)
+            r = Arrays.asList(items).subList(index,items.length).toArray();
+        index = items.length;
+        fetch();
+        return (List<T>)Arrays.asList(r);
     }
 
     /**
@@ -70,17 +149,94 @@ final class ComCollection<T> implements Iterator<T> {
     }
 
     /**
-     * Fetches the next element.
+     * Fetches the next batch.
      */
     private void fetch() {
-    	next.clear();
-        // We need to remember for what thread the IEnumVARIANT was marshaled. Because if we want to interpret this
-        // VARIANT as an interface pointer later on, we need to do this in the same thread!
-        next.thread = e.getComThread();
-        int r = e.next(1,next);
-        if(r==0) {
-            next = null;
+        index = 0;
+        if(exhausted) {
+            items = new Object[0];
+            return;
+        }
+
+        if(pending!=null) {
+            try {
+                items = pending.get();
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+                throw new ExecutionException(x);
+            } catch (java.util.concurrent.ExecutionException x) {
+                if(x.getCause() instanceof ComException)
+                    throw new ComException((ComException)x.getCause());
+                throw new ExecutionException(x.getCause());
+            } finally {
+                pending = null;
+            }
+        } else {
+            items = new Fetch().execute(thread);
+        }
+
+        // a short batch doesn't mean the end, since some enumerators return fewer elements
+        // than asked for (often just one) along with S_OK. only an empty batch does.
+        exhausted = items.length==0;
+        if(exhausted) {
+            // nobody else has seen this one
+            VariantAllocator.free(scratch.slot);
             e.dispose();
+        } else
+        if(PREFETCH) {
+            pending = thread.submit(new Fetch());
+        }
+    }
+
+    /**
+     * Fetches and converts a batch of elements in {@link ComCollection#thread}.
+     */
+    private final class Fetch extends Task<Object[]> {
+        public Object[] call() {
+            int n = e.next(BATCH_SIZE,buf);
+            Object[] r = new Object[n];
+            int size = scratch.image.capacity();
+            for( int i=0; i<n; i++ ) {
+                // move the VARIANT, so that the conversion sees a Variant
+                for( int j=0; j<size; j+=8 ) {
+                    scratch.image.putLong(j,buf.getLong(i*size+j));
+                    buf.putLong(i*size+j,0);
+                }
+                try {
+                    r[i] = convert();
+                } catch (RuntimeException x) {
+                    clear(i+1,n);
+                    throw x;
+                } finally {
+                    scratch.clear();
+                }
+            }
+            return r;
+        }
+
+        private Object convert() {
+            if(!Com4jObject.class.isAssignableFrom(type))
+                return scratch.convertTo(type);
+
+            Com4jObject wrapper = scratch.convertTo(Com4jObject.class);
+            if(null == wrapper)
+                return null;
+
+            Com4jObject ret = wrapper.queryInterface(type.asSubclass(Com4jObject.class));
+            Wrapper.disposeTemporary(wrapper);
+            return ret;
+        }
+
+        /**
+         * Clears the VARIANTs in the given range of {@link #buf} that weren't converted.
+         */
+        private void clear(int start, int end) {
+            int size = scratch.image.capacity();
+            for( int i=start; i<end; i++ ) {
+                buf.limit((i+1)*size).position(i*size);
+                Variant.clear0(buf.slice().order(ByteOrder.LITTLE_ENDIAN));
+            }
+            buf.clear();
         }
     }
 }
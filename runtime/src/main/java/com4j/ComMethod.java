@@ -53,6 +53,13 @@ abstract class ComMethod {
      */
     final protected int[] defaultParameterIndex;
 
+    /**
+     * For a method with {@link UseDefaultValues}, the position of each Java parameter
+     * in the parameters of the COM method. Null otherwise.
+     * @see #fillDefaultParameters(Object[])
+     */
+    private final int[] javaParameterIndex;
+
     /** Array of NativeTypes that describe the parameters of the method */
     final NativeType[] params;
     /** The parameter conversion codes passed to the native part of the invoke method */
@@ -67,6 +74,10 @@ abstract class ComMethod {
     final Class<?>[] paramTypes;
     /** The Type objects of the generic parameters */
     final Type[] genericParamTypes;
+    /** The conversions of the parameters that need one before the call */
+    final ParameterConverter[] toNativeConverters;
+    /** The conversions of the parameters that need one after the call */
+    final ParameterConverter[] toJavaConverters;
 
     /**
      * Constructs a new ComMethod for the given {@link Method}
@@ -80,10 +91,12 @@ abstract class ComMethod {
       if(defValues != null){
         defaultParameters = new Object[defValues.optParamIndex().length];
         defaultParameterIndex = defValues.optParamIndex();
+        javaParameterIndex = defValues.paramIndexMapping();
         generateDefaultParameters(defValues);
       }else{
         defaultParameters = new Object[0];
         defaultParameterIndex = new int[0];
+        javaParameterIndex = null;
       }
 
 
@@ -153,6 +166,8 @@ abstract class ComMethod {
         genericParamTypes[ind] = defValues.javaType()[i];
       }
 
+      toNativeConverters = ParameterConverter.toNative(params,paramTypes);
+      toJavaConverters = ParameterConverter.toJava(params,genericParamTypes);
     }
 
     /**
@@ -167,21 +182,34 @@ abstract class ComMethod {
      */
     abstract Object invoke( long ptr, Object[] args );
 
+    /**
+     * Expands the arguments passed to a Java method that omits some of the parameters
+     * of the COM method, by filling in the default values.
+     *
+     * @param args The arguments passed to the Java method.
+     * @return The arguments for {@link #invoke(long, Object[])}, which is {@code args} itself
+     *         unless the method has {@link UseDefaultValues}.
+     */
+    final Object[] fillDefaultParameters(Object[] args) {
+        if(javaParameterIndex==null)
+            return args;
+
+        Object[] newArgs = new Object[params.length];
+        // fill in the given arguments to the right place:
+        for( int i=0; i<args.length; i++ )
+            newArgs[javaParameterIndex[i]] = args[i];
+        // Fill in the (optional) default values:
+        for( int i=0; i<defaultParameters.length; i++ )
+            newArgs[defaultParameterIndex[i]] = defaultParameters[i];
+        return newArgs;
+    }
+
     /**
      * Converts the parameters to be more native friendly.
      * @param args the array of objects to be converted.
      */
-    @SuppressWarnings("unchecked")
     protected void messageParameters(Object[] args){
-        for( int i=0; i<args.length; i++ ) {
-            if(args[i] instanceof Holder && params[i].getNoByRef()!=null) {
-                // massage the value of Holder, not the Holder itself
-                Holder h = (Holder)args[i];
-                h.value = params[i].getNoByRef().toNative(h.value);
-            } else {
-                args[i] = params[i].toNative(args[i]);
-            }
-        }
+        ParameterConverter.convert(toNativeConverters,args);
     }
 
     private static final Map<Class<?>,NativeType> defaultConversions = new HashMap<Class<?>, NativeType>();
@@ -200,6 +228,8 @@ abstract class ComMethod {
         defaultConversions.put( Object.class, NativeType.VARIANT_ByRef );
         defaultConversions.put( Variant.class, NativeType.VARIANT_ByRef );
         defaultConversions.put( Date.class, NativeType.Date );
+        defaultConversions.put( SafeArray.class, NativeType.SafeArrayHandle );
+        defaultConversions.put( FlatArray.class, NativeType.SafeArrayFlat );
     }
 
     /**
@@ -244,6 +274,8 @@ abstract class ComMethod {
                     return NativeType.PVOID_ByRef;
                   if(Double.class.isAssignableFrom(c))
                     return NativeType.Double_ByRef;
+                  if(SafeArray.class==c)
+                    return NativeType.SafeArrayHandle_ByRef;
                   if(c.isArray())
                     return NativeType.SafeArray_ByRef;
                 }
@@ -313,7 +345,7 @@ abstract class ComMethod {
             defaultParameters[i] = new BigDecimal(literal[i]);
             break;
           case VARIANT:
-            Variant v = new Variant();
+            Variant v = new Variant(true);
             switch(vt[i]){
               case VT_I1:
               case VT_UI1:
@@ -345,7 +377,7 @@ abstract class ComMethod {
                 v.set(literal[i]);
                 break;
               case VT_EMPTY:
-                v= new Variant();
+                v= new Variant(true);
                 break;
               case VT_ERROR:
                 v.makeError((int)Long.parseLong(literal[i], 16));
@@ -0,0 +1,59 @@
+package com4j;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link ComMethod}s of one Java interface, shared by all the {@link Wrapper}s of that interface.
+ *
+ * <p>
+ * {@link ComMethod}s are immutable, so there's no point in parsing the annotations of the
+ * same method again for every COM object. Lookups don't lock: the table is an immutable map
+ * that's replaced as a whole whenever a method is resolved for the first time. A method
+ * is normally resolved only once per interface, so writes are rare.
+ */
+final class ComMethodTable {
+    private volatile Map<Method,ComMethod> methods = Collections.emptyMap();
+
+    private ComMethodTable() {
+    }
+
+    /**
+     * Returns the {@link ComMethod} for the given method of the interface.
+     */
+    ComMethod get(Method method) {
+        ComMethod r = methods.get(method);
+        if(r!=null)     return r;
+        return resolve(method);
+    }
+
+    private synchronized ComMethod resolve(Method method) {
+        ComMethod r = methods.get(method);
+        if(r==null) {
+            r = Wrapper.createComMethod(method);
+            Map<Method,ComMethod> m = new HashMap<Method,ComMethod>(methods);
+            m.put(method,r);
+            methods = m;
+        }
+        return r;
+    }
+
+    /**
+     * Tables keyed by the interface. A table refers to the interface through its {@link Method}s,
+     * so it's only weakly referenced from here, and kept alive by the {@link Wrapper}s and the
+     * {@link ComStub.Binding}s that use it. So a table is never built again while one is in use.
+     */
+    private static final WeakClassMap<ComMethodTable> tables = new WeakClassMap<ComMethodTable>();
+
+    /**
+     * Gets the table for the given interface.
+     */
+    static ComMethodTable get(Class<?> intf) {
+        ComMethodTable t = tables.get(intf);
+        if(t==null)
+            t = tables.putIfAbsent(intf,new ComMethodTable());
+        return t;
+    }
+}
@@ -0,0 +1,285 @@
+package com4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Releases all the COM objects, {@link Variant}s and {@link SafeArray}s
+ * created in a block of code at once.
+ *
+ * <p>
+ * While a scope is open, every COM object, {@link Variant} and {@link SafeArray}
+ * created by the thread that opened it (including those created on its behalf in
+ * the {@link ComThread}) is recorded in the scope. {@link #close()} then
+ * disposes them all, with one trip to each {@link ComThread} involved, rather than
+ * leaving them to the garbage collector:
+ *
+ * <pre>
+ * ComScope scope = ComScope.open();
+ * try {
+ *     // use COM objects as much as you want
+ *     IFoo foo = doALotOfComStuff();
+ *
+ *     // keep "foo" alive after the scope is closed
+ *     scope.detach(foo);
+ * } finally {
+ *     scope.close();
+ * }
+ * </pre>
+ *
+ * <p>
+ * Scopes can be nested, in which case objects are recorded in the innermost one.
+ * The scope keeps the recorded objects reachable until it's closed or they are
+ * {@link #detach(Object) detached}, and they must not be used after that.
+ * A {@link Variant} is {@link Variant#clear() cleared} in the {@link ComThread} it belongs to,
+ * which releases what it holds, and its own memory is recycled once it's garbage collected.
+ *
+ * <p>
+ * Unlike {@link com4j.util.ComObjectCollector}, recording and detaching an object
+ * takes constant time.
+ *
+ * @see COM4J#addListener(ComObjectListener)
+ */
+public final class ComScope implements java.io.Closeable {
+    /**
+     * The innermost open scope of each thread.
+     */
+    private static final Map<Thread,ComScope> scopes = new ConcurrentHashMap<Thread,ComScope>();
+
+    /**
+     * The thread that opened this scope.
+     */
+    private final Thread owner;
+
+    /**
+     * The enclosing scope, if any.
+     */
+    private final ComScope parent;
+
+    /**
+     * Recorded objects. Keyed by identity, because {@link Wrapper#equals(Object)} talks to COM.
+     * Guarded by {@code this}.
+     */
+    private Map<Object,Object> objects = new IdentityHashMap<Object,Object>();
+
+    private ComScope(Thread owner, ComScope parent) {
+        this.owner = owner;
+        this.parent = parent;
+    }
+
+    /**
+     * Opens a new scope for the current thread.
+     *
+     * @return
+     *      The new scope, which must be {@link #close() closed}.
+     */
+    public static ComScope open() {
+        Thread t = Thread.currentThread();
+        ComScope s = new ComScope(t,scopes.get(t));
+        scopes.put(t,s);
+        return s;
+    }
+
+    /**
+     * Gets the innermost open scope of the current thread, or null if none.
+     */
+    static ComScope current() {
+        if(scopes.isEmpty())
+            return null;    // fast path
+        Thread t = Thread.currentThread();
+        if(t instanceof ComThreadMulti) {
+            // working on behalf of an application thread?
+            Thread r = ((ComThreadMulti)t).getRequester();
+            if(r!=null)
+                t = r;
+        }
+        return scopes.get(t);
+    }
+
+    /**
+     * Records a new {@link Wrapper}, {@link Variant} or {@link SafeArray}
+     * in the current scope, if any.
+     */
+    static void track(Object o) {
+        ComScope s = current();
+        if(s!=null)
+            s.add(o);
+    }
+
+    private synchronized void add(Object o) {
+        if(objects!=null)
+            objects.put(o,o);
+    }
+
+    /**
+     * Removes an object from this scope, so that it's not disposed when the scope is closed.
+     *
+     * @param o
+     *      A COM object, {@link Variant} or {@link SafeArray}.
+     * @return
+     *      false if the object wasn't recorded in this scope.
+     */
+    public synchronized boolean detach(Object o) {
+        if(o instanceof Com4jObject)
+            o = Wrapper.unwrap((Com4jObject)o);
+        return objects!=null && objects.remove(o)!=null;
+    }
+
+    /**
+     * Returns the number of objects recorded in this scope.
+     */
+    public synchronized int size() {
+        return objects!=null ? objects.size() : 0;
+    }
+
+    /**
+     * Returns true if this scope is closed.
+     */
+    public synchronized boolean isClosed() {
+        return objects==null;
+    }
+
+    /**
+     * Closes this scope, and disposes all the objects recorded in it.
+     * Does nothing if it's already closed.
+     */
+    public void close() {
+        Map<Object,Object> objects;
+        synchronized(this) {
+            objects = this.objects;
+            this.objects = null;
+        }
+        if(objects==null)
+            return;
+
+        // objects created from now on go to the enclosing scope
+        if(scopes.get(owner)==this) {
+            ComScope p = parent;
+            while(p!=null && p.isClosed())
+                p = p.parent;
+            if(p!=null)
+                scopes.put(owner,p);
+            else
+                scopes.remove(owner);
+        }
+
+        releaseAll(objects.keySet());
+    }
+
+    /**
+     * Implements {@link COM4J#disposeAll(Iterable)}.
+     */
+    static int disposeAll(Iterable<? extends Com4jObject> objects) {
+        List<Wrapper> wrappers = new ArrayList<Wrapper>();
+        for (Com4jObject o : objects) {
+            if(o==null)     continue;
+            Wrapper w = Wrapper.unwrap(o);
+            if(!w.isDisposed())
+                wrappers.add(w);
+        }
+        return releaseAll(wrappers);
+    }
+
+    /**
+     * Releases {@link Wrapper}s, {@link Variant}s and {@link SafeArray}s,
+     * with one task for each {@link ComThread} involved.
+     *
+     * <p>
+     * If releasing an object fails, the rest are still released,
+     * and then the first failure is thrown.
+     *
+     * @return
+     *      The number of objects released by this call. {@link Wrapper}s that
+     *      were already disposed are skipped, and aren't counted.
+     */
+    static int releaseAll(Iterable<?> objects) {
+        // group what needs to be released in a ComThread. the null key is for the rest
+        Map<ComThread,List<Object>> groups = new HashMap<ComThread,List<Object>>();
+        for (Object o : objects) {
+            ComThread t = null;
+            if(o instanceof Wrapper)
+                t = ((Wrapper)o).getComThread();
+            if(o instanceof Variant)
+                t = ((Variant)o).slot.thread;
+            List<Object> g = groups.get(t);
+            if(g==null)
+                groups.put(t,g=new ArrayList<Object>());
+            g.add(o);
+        }
+
+        int n = 0;
+        RuntimeException failure = null;
+        for (Map.Entry<ComThread,List<Object>> e : groups.entrySet()) {
+            Group g = new Group(e.getValue());
+            try {
+                if(e.getKey()==null)
+                    n += g.call();
+                else
+                    n += g.execute(e.getKey());
+            } catch (RuntimeException x) {
+                // the task as a whole didn't run
+                if(failure==null)
+                    failure = x;
+                continue;
+            }
+            if(failure==null)
+                failure = g.failure;
+        }
+        if(failure!=null)
+            throw failure;
+        return n;
+    }
+
+    /**
+     * Releases the objects of one {@link ComThread}.
+     */
+    private static final class Group extends Task<Integer> {
+        private final List<Object> objects;
+
+        /**
+         * The first failure, if any.
+         */
+        RuntimeException failure;
+
+        Group(List<Object> objects) {
+            this.objects = objects;
+        }
+
+        public Integer call() {
+            int n = 0;
+            for (Object o : objects) {
+                try {
+                    if(release(o))
+                        n++;
+                } catch (RuntimeException x) {
+                    if(failure==null)
+                        failure = x;
+                }
+            }
+            return n;
+        }
+    }
+
+    private static boolean release(Object o) {
+        if(o instanceof Wrapper) {
+            Wrapper w = (Wrapper)o;
+            if(w.isDisposed())
+                return false;
+            w.dispose0();
+            return true;
+        }
+        if(o instanceof Variant) {
+            VariantAllocator.clear(((Variant)o).slot);
+            return true;
+        }
+        if(o instanceof SafeArray) {
+            ((SafeArray)o).dispose();
+            return true;
+        }
+        return false;
+    }
+}
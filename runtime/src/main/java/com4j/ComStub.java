@@ -0,0 +1,161 @@
+package com4j;
+
+import java.lang.reflect.Method;
+
+/**
+ * Base class of the stub classes that tlbimp generates with the {@code -stubs} option.
+ *
+ * <p>
+ * Normally, a COM object is exposed to the application as a {@link java.lang.reflect.Proxy}
+ * that sends every call to {@link Wrapper#invoke(Object, Method, Object[])}, which has to
+ * figure out what to do with the {@link Method} on every invocation.
+ * A stub class for the interface {@code IFoo} is a generated class called {@code IFoo_Stub}
+ * that implements {@code IFoo} directly. Each of its methods is bound to a {@link Binding}
+ * once when the class is initialized, so a call just boxes the arguments and goes straight
+ * to the {@link ComThread}.
+ *
+ * <p>
+ * When a stub class is found next to the interface, com4j uses it instead of the proxy,
+ * and creates its instances through its {@code public static final Factory FACTORY} field,
+ * without reflection. Applications don't use this class directly.
+ */
+public abstract class ComStub implements Com4jObject {
+    private final Wrapper wrapper;
+
+    /**
+     * @param wrapper
+     *      The object that com4j passes to the constructor of the generated stub.
+     */
+    protected ComStub(Com4jObject wrapper) {
+        if(!(wrapper instanceof Wrapper))
+            throw new IllegalArgumentException("Stubs are instantiated by com4j");
+        this.wrapper = (Wrapper)wrapper;
+    }
+
+    /**
+     * Creates instances of a stub class.
+     * Each stub class exposes one as {@code public static final Factory FACTORY}.
+     */
+    public interface Factory {
+        /**
+         * @param wrapper
+         *      The object to pass to the constructor of the stub.
+         */
+        ComStub create(Com4jObject wrapper);
+    }
+
+    /**
+     * Returns the {@link Wrapper} that owns the interface pointer.
+     */
+    final Wrapper getWrapper() {
+        return wrapper;
+    }
+
+    /**
+     * Invokes a bound COM method.
+     *
+     * @param method
+     *      One of the bindings the stub created with {@link #bind(Class, String, Class[])}.
+     * @param args
+     *      The parameters, as they'd be passed to the {@link java.lang.reflect.InvocationHandler}.
+     * @return
+     *      The return value of the method, boxed if necessary.
+     */
+    protected final Object invoke(Binding method, Object... args) {
+        return wrapper.invoke(method.comMethod,args);
+    }
+
+    /**
+     * Binds a method of a COM interface.
+     *
+     * <p>
+     * Called from the static initializer of a stub class, so that the annotations on the
+     * interface method are processed only once.
+     *
+     * @param intf
+     *      The interface the stub implements.
+     * @param name
+     *      The name of the Java method.
+     * @param parameterTypes
+     *      The erasure of the parameter types of the Java method.
+     * @return never null
+     * @throws NoSuchMethodError
+     *      if the stub and the interface are out of sync.
+     */
+    protected static Binding bind(Class<? extends Com4jObject> intf, String name, Class<?>... parameterTypes) {
+        try {
+            return new Binding(intf,intf.getMethod(name,parameterTypes));
+        } catch (NoSuchMethodException e) {
+            throw new NoSuchMethodError(e.getMessage());
+        }
+    }
+
+    /**
+     * A COM method bound by {@link ComStub#bind(Class, String, Class[])}.
+     */
+    protected static final class Binding {
+        /**
+         * Keeps the table of the interface in use, so that the stub and
+         * the {@link java.lang.reflect.Proxy proxies} of the interface share it.
+         */
+        private final ComMethodTable table;
+        private final ComMethod comMethod;
+
+        private Binding(Class<?> intf, Method method) {
+            this.table = ComMethodTable.get(intf);
+            this.comMethod = table.get(method);
+        }
+    }
+
+    public int getPtr() {
+        return wrapper.getPtr();
+    }
+
+    public long getPointer() {
+        return wrapper.getPointer();
+    }
+
+    public long getIUnknownPointer() {
+        return wrapper.getIUnknownPointer();
+    }
+
+    public ComThread getComThread() {
+        return wrapper.getComThread();
+    }
+
+    public void dispose() {
+        wrapper.dispose();
+    }
+
+    public void close() {
+        wrapper.close();
+    }
+
+    public <T extends Com4jObject> boolean is(Class<T> comInterface) {
+        return wrapper.is(comInterface);
+    }
+
+    public <T extends Com4jObject> T queryInterface(Class<T> comInterface) {
+        return wrapper.queryInterface(comInterface);
+    }
+
+    public <T> EventCookie advise(Class<T> eventInterface, T receiver) {
+        return wrapper.advise(eventInterface,receiver);
+    }
+
+    public void setName(String name) {
+        wrapper.setName(name);
+    }
+
+    public boolean equals(Object rhs) {
+        return wrapper.equals(rhs);
+    }
+
+    public int hashCode() {
+        return wrapper.hashCode();
+    }
+
+    public String toString() {
+        return wrapper.toString();
+    }
+}
@@ -1,6 +1,8 @@
 package com4j;
 
 import java.lang.ref.ReferenceQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 /**
  * Interface for threads managed by com4j.
@@ -28,6 +30,21 @@ public interface ComThread {
      */
     public <T> T execute(Task<T> task);
 
+    /**
+     * Schedules a {@link Callable} for execution in this {@link ComThread}
+     * and returns without waiting for its completion.
+     *
+     * <p>
+     * Tasks submitted to the same {@link ComThread} run in the order they were submitted.
+     * If called from this {@link ComThread} itself, the task is run at once, so that
+     * waiting for the returned {@link Future} doesn't dead-lock.
+     *
+     * @param task The task to be executed. {@link Task} can be passed, too.
+     * @param <T> The type of the return value.
+     * @return The {@link Future} that receives the result of the task.
+     */
+    public <T> Future<T> submit(Callable<T> task);
+
     /**
      * Checks if the current thread this instance of ComThread;
      */
@@ -35,7 +52,11 @@ public interface ComThread {
 
     /**
      * Keeps track of wrappers that should be IUnknown::release-d.
+     *
+     * @deprecated
+     *      com4j no longer uses this queue. The {@link ComThread}s of com4j return an empty one.
      */
+    @Deprecated
     public ReferenceQueue<Wrapper> getCollectableObjects();
 
     /**
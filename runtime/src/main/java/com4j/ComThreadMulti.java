@@ -4,9 +4,12 @@ import java.lang.ref.ReferenceQueue;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 
 /**
@@ -37,17 +40,37 @@ import java.util.Set;
  */
 public final class ComThreadMulti extends Thread implements ComThread {
 
-	public static int GARBAGE_COLLECTION_INTERVAL = 10;
+    /**
+     * How long in milliseconds a {@link ComThreadMulti} waits before it looks for garbage
+     * right after it has done some work.
+     *
+     * <p>
+     * Each time the thread wakes up with nothing to do, it doubles its wait time, up to
+     * {@link #MAX_GARBAGE_COLLECTION_INTERVAL}, so idle threads hardly ever wake up.
+     * Queued tasks wake the thread immediately regardless of this interval.
+     * Both values can be changed at runtime.
+     */
+	public static volatile int GARBAGE_COLLECTION_INTERVAL = 10;
+
+    /**
+     * The longest time in milliseconds an idle {@link ComThreadMulti} waits before it looks for garbage.
+     * This also bounds how long it takes for a thread to notice that its peer has died.
+     *
+     * @see #GARBAGE_COLLECTION_INTERVAL
+     */
+    public static volatile int MAX_GARBAGE_COLLECTION_INTERVAL = 1000;
     
 	/**
      * Used to associate a {@link ComThreadMulti} for every thread.
      */
     private static final ThreadLocal<ComThreadMulti> map = new ThreadLocal<ComThreadMulti>() {
         public ComThreadMulti initialValue() {
-            if( Thread.currentThread() instanceof ComThreadMulti)
-                return (ComThreadMulti)Thread.currentThread();
-            else
-                return new ComThreadMulti(Thread.currentThread());
+            Thread t = Thread.currentThread();
+            if( t instanceof ComThreadMulti)
+                return (ComThreadMulti)t;
+            if( ComThreadPool.INSTANCE!=null )
+                return ComThreadPool.INSTANCE.assign(t);
+            return new ComThreadMulti("ComThread for "+t.getName(),t);
         }
     };
 
@@ -59,10 +82,27 @@ public final class ComThreadMulti extends Thread implements ComThread {
     }
 
     /**
-     * Detaches the {@link ComThreadMulti} for the current thread (peer) by calling {@link #kill()}
+     * Detaches the {@link ComThreadMulti} for the current thread (peer) by calling {@link #kill()}.
+     * A pooled {@link ComThreadMulti} is shared by other threads, so it only releases
+     * the objects created on behalf of the current thread, and is then unassigned.
      */
     static void detach() {
-        map.get().kill();
+        final ComThreadMulti t = map.get();
+        if(t.peer==null) {
+            if(t!=Thread.currentThread()) {
+                final Thread me = Thread.currentThread();
+                new Task<Void>() {
+                    public Void call() {
+                        t.liveComObjects.releaseAll(me);
+                        return null;
+                    }
+                }.execute(t);
+                ComThreadPool.INSTANCE.release(me,t);
+            }
+            map.remove();
+            return;
+        }
+        t.kill();
         try {
           map.get().join();
         } catch (InterruptedException e) {
@@ -73,36 +113,138 @@ public final class ComThreadMulti extends Thread implements ComThread {
 
     /**
      * Constructs a new ComThread for the given peer and starts it.
-     * @param peer The peer thread.
+     * @param name The name of the thread.
+     * @param peer The peer thread, or null if this thread belongs to {@link ComThreadPool}.
+     */
+    ComThreadMulti(String name, Thread peer) {
+        this(name,peer,false);
+    }
+
+    /**
+     * Constructs a new ComThread for the given peer and starts it.
+     * @param name The name of the thread.
+     * @param peer The peer thread, or null if this thread isn't tied to any application thread.
+     * @param mta True to make this thread enter the multi-threaded apartment instead of a single-threaded one.
      */
-    private ComThreadMulti(Thread peer) {
-        super("ComThread for "+peer.getName());
+    private ComThreadMulti(String name, Thread peer, boolean mta) {
+        super(name);
         this.peer = peer;
+        this.mta = mta;
         setDaemon(true);    // we don't want to block the JVM from exiting
         start();
     }
 
     /**
-     * The peer thread.
+     * The thread that owns the objects created through {@link FreeThreaded}.
+     */
+    private static ComThreadMulti mtaThread;
+
+    /**
+     * Gets the {@link ComThreadMulti} that lives in the multi-threaded apartment, creating it if necessary.
+     */
+    static synchronized ComThreadMulti getMTA() {
+        if(mtaThread==null || !mtaThread.isAlive())
+            mtaThread = new ComThreadMulti("ComThread for MTA",null,true);
+        return mtaThread;
+    }
+
+    /**
+     * Checks if the current thread is in the multi-threaded apartment.
+     *
+     * <p>
+     * The apartment of an application thread is left to the application, so this
+     * never initializes COM on it. A thread that the application hasn't put in
+     * the multi-threaded apartment goes through {@link #getMTA()} to talk to free-threaded objects.
+     * The answer isn't cached, because the application can change the apartment of its threads.
+     */
+    static boolean inMTA() {
+        Thread t = Thread.currentThread();
+        if( t instanceof ComThreadMulti)
+            return ((ComThreadMulti)t).mta;
+        return Native.isMTA();
+    }
+
+    /**
+     * True if this thread lives in the multi-threaded apartment.
+     */
+    private final boolean mta;
+
+    /**
+     * Returns true if this thread lives in the multi-threaded apartment, meaning
+     * the objects it creates can be called from any other thread in that apartment.
+     */
+    boolean isMTA() {
+        return mta;
+    }
+
+    /**
+     * The peer thread. Null if this thread is shared by many threads through {@link ComThreadPool}.
      */
     private final Thread peer;
 
+    /**
+     * The thread on whose behalf the task currently running was submitted.
+     * Only accessed from this thread.
+     */
+    private Thread requester;
+
+    /**
+     * Gets the thread on whose behalf the task currently running was submitted,
+     * or null if none. Must be called from this thread.
+     */
+    Thread getRequester() {
+        return requester;
+    }
+
     /**
      * Tasks that need to be processed.
      */
-    private final List<Task<?>> taskList = Collections.synchronizedList((new LinkedList<Task<?>>()));// com4j issue 70
+    private final TaskQueue taskQueue = new TaskQueue();// com4j issue 70
+
+    /**
+     * Maximum number of tasks {@link #run0()} takes off {@link #taskQueue} before
+     * it goes back to collect garbage. Set by the <tt>com4j.taskBatchSize</tt>
+     * system property (64 by default).
+     */
+    private static final int TASK_BATCH_SIZE;
+
+    static {
+        int size = 64;
+        try {
+            size = Integer.getInteger("com4j.taskBatchSize",size);
+        } catch (SecurityException e) {
+            ;
+        }
+        TASK_BATCH_SIZE = Math.max(1,size);
+    }
 
     /**
      * COM objects that this thread is managing. This thread needs to stick around until they are all gone,
      * even when the peer is dead, because other threads might still want to talk to these objects.
+     *
+     * <p>
+     * The garbage collected ones are pushed here by another thread, which wakes this thread up.
      */
-    private Set<NativePointerPhantomReference> liveComObjects = new HashSet<NativePointerPhantomReference>();
+    final ReleaseQueue liveComObjects = new ReleaseQueue() {
+        void signal() {
+            lock.activate();
+        }
+    };
 
     /**
-     * Keeps track of wrappers that should be IUnknown::release-d.
+     * Wrappers of the COM objects of this thread, if {@link WrapperIdentityMap#ENABLED}.
      */
-    final ReferenceQueue<Wrapper> collectableObjects = new ReferenceQueue<Wrapper>();
+    final WrapperIdentityMap identities = new WrapperIdentityMap();
+
+    private final ReferenceQueue<Wrapper> collectableObjects = new ReferenceQueue<Wrapper>();
 
+    /**
+     * @deprecated
+     *      The garbage collected {@link Wrapper}s go to the {@link ReleaseQueue} of this thread now.
+     *      Returns an empty queue that nothing is ever enqueued to, so that polling it can't steal
+     *      the references that com4j needs to release the interface pointers.
+     */
+    @Deprecated
     public ReferenceQueue<Wrapper> getCollectableObjects() {
         return collectableObjects;
     }
@@ -110,13 +252,19 @@ public final class ComThreadMulti extends Thread implements ComThread {
     /**
      * Listeners attached to this thread.
      */
-    private final List<ComObjectListener> listeners = new ArrayList<ComObjectListener>();
+    private final List<ComObjectListener> listeners = new CopyOnWriteArrayList<ComObjectListener>();
 
     /**
      * If set to true, this thread will commit suicide.
      */
     private volatile boolean die = false;
 
+    /**
+     * Set to true when this thread stops taking tasks. From then on,
+     * whoever queues a task takes it back off and {@link Task#abort(Throwable) aborts} it.
+     */
+    private volatile boolean dead = false;
+
     /**
      * Used instead of the monitor of an object, so that we can run
      * a message loop while waiting.
@@ -131,8 +279,8 @@ public final class ComThreadMulti extends Thread implements ComThread {
      * </p>
      */
     private boolean canExit() {
-        // lhs:forcible death <->  rhs:natural death
-        return die || (!peer.isAlive() && liveComObjects.isEmpty());
+        // lhs:forcible death <->  rhs:natural death. pooled threads only die forcibly.
+        return die || (peer!=null && !peer.isAlive() && liveComObjects.size()==0);
     }
 
     /**
@@ -157,41 +305,81 @@ public final class ComThreadMulti extends Thread implements ComThread {
             run0();
         } finally {
             threads.remove(this);
+            dead = true;
+            abortPendingTasks();
         }
     }
 
+    /**
+     * Queues a task for this thread to run.
+     */
+    private void post(Task<?> task) {
+        task.requester = Thread.currentThread();
+        taskQueue.push(task);
+        if(dead)
+            // this thread may have drained the queue for the last time before we pushed
+            abortPendingTasks();
+        else
+            lock.activate();
+    }
+
+    /**
+     * Fails the tasks left in {@link #taskQueue} once this thread is {@link #dead}.
+     * The monitor makes sure that only one thread takes tasks off the queue at a time.
+     * The tasks are aborted outside of it, as their callers may hold their monitors while they queue.
+     */
+    private void abortPendingTasks() {
+        List<Task<?>> pending = new ArrayList<Task<?>>();
+        synchronized(taskQueue) {
+            Task<?> t;
+            while((t=taskQueue.poll())!=null)
+                pending.add(t);
+        }
+        for (Task<?> t : pending)
+            t.abort(new IllegalStateException(getName()+" has exited"));
+    }
+
     private void run0() {
-        Native.coInitialize();
+        if(mta)
+            Native.coInitializeMTA();
+        else
+            Native.coInitialize();
 
+        Task<?>[] batch = new Task<?>[TASK_BATCH_SIZE];
+        int interval = GARBAGE_COLLECTION_INTERVAL;
         while(!canExit()) {
-            lock.suspend(GARBAGE_COLLECTION_INTERVAL);
+            lock.suspend(interval);
 
             //Clean up any com objects that need releasing
-            collectGarbage();
-
-            // do any scheduled tasks that need to be done
-            while (!taskList.isEmpty()) {
-                Task<?> task = taskList.get(0);
-                taskList.remove(0);
-                task.invoke();
-
-                // wake up the waiting thread
-                lock.activate();
-                
-                //Maybe the task produced some garbage...clean that up
+            boolean busy = collectGarbage();
+
+            // do any scheduled tasks that need to be done, a batch at a time
+            int n;
+            while ((n=taskQueue.drain(batch,batch.length))>0) {
+                busy = true;
+                for( int i=0; i<n; i++ ) {
+                    requester = batch[i].requester;
+                    batch[i].invoke();
+                    batch[i] = null;
+                }
+                requester = null;
+
+                //Maybe the tasks produced some garbage...clean that up
                 collectGarbage();
             }
+
+            // back off while idle, so that idle threads don't keep waking up
+            if(busy)
+                interval = GARBAGE_COLLECTION_INTERVAL;
+            else
+                interval = Math.max(GARBAGE_COLLECTION_INTERVAL,Math.min(interval*2,MAX_GARBAGE_COLLECTION_INTERVAL));
         }
 
         collectGarbage();
         
         //And clobber any live COM objects that have not been dispose()'d to avoid
         //leaking these objects on die
-        for(NativePointerPhantomReference ref : liveComObjects) {
-        	ref.clear();
-        	ref.releaseNative();
-        }
-        liveComObjects.clear();
+        liveComObjects.releaseAll();
         
         //Kill the event handle we are holding in the lock.
         lock.dispose();
@@ -201,15 +389,14 @@ public final class ComThreadMulti extends Thread implements ComThread {
 
     /**
      * Cleans up any left over references
+     * @return true if any reference was released.
      */
-	private void collectGarbage() {
+	private boolean collectGarbage() {
 		// dispose unused objects if any
-		NativePointerPhantomReference toCollect;
-		while((toCollect = (NativePointerPhantomReference)collectableObjects.poll()) != null) {
-		    liveComObjects.remove(toCollect);
-		    toCollect.clear();
-		    toCollect.releaseNative();
-		}
+		boolean collected = liveComObjects.release();
+		VariantAllocator.collectGarbage();
+		CallInterface.collectGarbage();
+		return collected;
 	}
 
     /**
@@ -222,11 +409,8 @@ public final class ComThreadMulti extends Thread implements ComThread {
     public <T> T execute(Task<T> task) {
         synchronized(task) {
             task.reset();
-            // add it to the tail
-            taskList.add(task);
-
-            // invoke the execution
-            lock.activate();
+            // add it to the tail, and invoke the execution
+            post(task);
 
             // wait for the completion
             try {
@@ -251,6 +435,46 @@ public final class ComThreadMulti extends Thread implements ComThread {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * If this thread has exited, or exits before it gets to the task,
+     * {@link Future#get()} throws a {@link java.util.concurrent.ExecutionException}
+     * caused by an {@link IllegalStateException}.
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        Submitted<T> f = new Submitted<T>(task);
+        if(isCurrentThread())
+            f.run();
+        else
+            post(f.task);
+        return f;
+    }
+
+    /**
+     * {@link Future} of a task {@link #submit(Callable) submitted} from another thread.
+     */
+    private static final class Submitted<T> extends FutureTask<T> {
+        /**
+         * What goes to the queue.
+         */
+        final Task<Void> task = new Task<Void>() {
+            public Void call() {
+                run();
+                return null;
+            }
+
+            void abort(Throwable e) {
+                setException(e);
+            }
+        };
+
+        Submitted(Callable<T> callable) {
+            super(callable);
+        }
+    }
+
     /**
      * Adds a {@link Com4jObject} to the live objects of this {@link ComThreadMulti}
      * <p>
@@ -261,7 +485,10 @@ public final class ComThreadMulti extends Thread implements ComThread {
      */
     public synchronized void addLiveObject( Com4jObject r ) {// TODO: why is this public?
     	if(r instanceof Wrapper) {
-    		liveComObjects.add(((Wrapper)r).ref);
+    		NativePointerPhantomReference ref = ((Wrapper)r).ref;
+    		if(peer==null && isCurrentThread())
+    		    ref.requester = requester;  // so that COM4J.cleanUp() can find them
+    		liveComObjects.add(ref);
     	}
         
         if(!listeners.isEmpty()) {
@@ -270,6 +497,13 @@ public final class ComThreadMulti extends Thread implements ComThread {
         }
     }
     
+    /**
+     * Returns the number of COM objects this thread is keeping alive.
+     */
+    int getLiveObjectCount() {
+        return liveComObjects.size();
+    }
+
     /**
      * Checks if the current thread is this instance of ComThreadSafe;
      */
@@ -285,6 +519,8 @@ public final class ComThreadMulti extends Thread implements ComThread {
     public void addListener(ComObjectListener listener) {
         if(listener==null)
             throw new IllegalArgumentException("listener is null");
+        if(peer==null)
+            listener = new RequesterListener(Thread.currentThread(),listener);
         if(listeners.contains(listener))
             throw new IllegalArgumentException("can't register the same listener twice");
         listeners.add(listener);
@@ -296,10 +532,40 @@ public final class ComThreadMulti extends Thread implements ComThread {
      * @throws IllegalArgumentException if the listener was not registered to this {@link ComThreadMulti}
      */
     public void removeListener(ComObjectListener listener) {
+        if(peer==null && listener!=null)
+            listener = new RequesterListener(Thread.currentThread(),listener);
         if(!listeners.remove(listener))
             throw new IllegalArgumentException("listener isn't registered");
     }
 
+    /**
+     * When a pooled thread is shared by many application threads, this makes sure that
+     * a listener only hears about the objects created on behalf of the thread that registered it.
+     */
+    private final class RequesterListener implements ComObjectListener {
+        private final Thread owner;
+        private final ComObjectListener core;
+
+        RequesterListener(Thread owner, ComObjectListener core) {
+            this.owner = owner;
+            this.core = core;
+        }
+
+        public void onNewObject(Com4jObject obj) {
+            if(requester==owner)
+                core.onNewObject(obj);
+        }
+
+        public boolean equals(Object o) {
+            if(!(o instanceof RequesterListener))   return false;
+            RequesterListener that = (RequesterListener) o;
+            return owner==that.owner && core.equals(that.core);
+        }
+
+        public int hashCode() {
+            return owner.hashCode()*31+core.hashCode();
+        }
+    }
 
     /**
      * All living and running {@link ComThreadMulti}s.
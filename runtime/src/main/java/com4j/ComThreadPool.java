@@ -0,0 +1,161 @@
+package com4j;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Fixed-size pool of {@link ComThreadMulti}s shared by all the application threads.
+ *
+ * <p>
+ * By default, com4j creates one {@link ComThreadMulti} as a shadow thread for every application
+ * thread that touches COM. When the system property {@code com4j.comThreadPoolSize} is set to a
+ * positive number N, com4j instead maps application threads onto at most N apartment threads.
+ * The assignment is sticky: an application thread keeps talking to the same apartment thread
+ * until it calls {@link COM4J#cleanUp()}, so objects it creates keep living in the same apartment.
+ * New application threads are assigned to the least loaded apartment thread.
+ *
+ * <p>
+ * Pooled apartment threads stay around until the JVM shuts down.
+ *
+ * <p>
+ * When a pooled thread is shared, {@link COM4J#addListener(ComObjectListener)} still only reports
+ * objects created on behalf of the application thread that registered the listener.
+ *
+ * @see COM4J#getComThreadPool()
+ */
+public final class ComThreadPool {
+    /**
+     * The pool in use, or null if com4j runs one {@link ComThreadMulti} per application thread.
+     */
+    static final ComThreadPool INSTANCE;
+
+    static {
+        int size = 0;
+        try {
+            size = Integer.getInteger("com4j.comThreadPoolSize",0);
+        } catch (SecurityException e) {
+            ;
+        }
+        INSTANCE = size>0 ? new ComThreadPool(size) : null;
+    }
+
+    /**
+     * Apartment threads. Started lazily.
+     */
+    private final ComThreadMulti[] threads;
+
+    /**
+     * Application threads assigned to each apartment thread.
+     */
+    private final List<List<WeakReference<Thread>>> peers;
+
+    private ComThreadPool(int size) {
+        threads = new ComThreadMulti[size];
+        peers = new ArrayList<List<WeakReference<Thread>>>(size);
+        for( int i=0; i<size; i++ )
+            peers.add(new ArrayList<WeakReference<Thread>>());
+    }
+
+    /**
+     * Picks the apartment thread for the given application thread.
+     */
+    synchronized ComThreadMulti assign(Thread peer) {
+        int best = -1;
+        int bestLoad = Integer.MAX_VALUE;
+        for( int i=0; i<threads.length; i++ ) {
+            if(threads[i]==null || !threads[i].isAlive()) {
+                // prefer starting a new thread over sharing one
+                threads[i] = new ComThreadMulti("ComThread pool #"+i,null);
+                peers.get(i).clear();
+                best = i;
+                break;
+            }
+            int load = countPeers(i);
+            if(load<bestLoad) {
+                best = i;
+                bestLoad = load;
+            }
+        }
+        peers.get(best).add(new WeakReference<Thread>(peer));
+        return threads[best];
+    }
+
+    /**
+     * Forgets the assignment of the given application thread.
+     */
+    synchronized void release(Thread peer, ComThreadMulti thread) {
+        for( int i=0; i<threads.length; i++ ) {
+            if(threads[i]!=thread)  continue;
+            Iterator<WeakReference<Thread>> itr = peers.get(i).iterator();
+            while(itr.hasNext()) {
+                if(itr.next().get()==peer) {
+                    itr.remove();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the live application threads assigned to the i-th thread,
+     * pruning the dead ones.
+     */
+    private int countPeers(int i) {
+        int n=0;
+        Iterator<WeakReference<Thread>> itr = peers.get(i).iterator();
+        while(itr.hasNext()) {
+            Thread t = itr.next().get();
+            if(t==null || !t.isAlive())
+                itr.remove();
+            else
+                n++;
+        }
+        return n;
+    }
+
+    /**
+     * Returns the maximum number of apartment threads in this pool.
+     * @return the value of the {@code com4j.comThreadPoolSize} system property.
+     */
+    public int getSize() {
+        return threads.length;
+    }
+
+    /**
+     * Returns the number of apartment threads that are currently running.
+     * This never exceeds {@link #getSize()}.
+     * @return the number of started apartment threads
+     */
+    public synchronized int getOccupancy() {
+        int n=0;
+        for (ComThreadMulti t : threads)
+            if(t!=null && t.isAlive())
+                n++;
+        return n;
+    }
+
+    /**
+     * Returns the number of live application threads assigned to each apartment thread.
+     * @return an array of {@link #getSize()} elements. Slots of apartment threads that aren't running yet are 0.
+     */
+    public synchronized int[] getPeerCounts() {
+        int[] r = new int[threads.length];
+        for( int i=0; i<threads.length; i++ )
+            r[i] = countPeers(i);
+        return r;
+    }
+
+    /**
+     * Returns the number of COM objects each apartment thread is currently keeping alive.
+     * @return an array of {@link #getSize()} elements. Slots of apartment threads that aren't running yet are 0.
+     */
+    public synchronized int[] getLiveObjectCounts() {
+        int[] r = new int[threads.length];
+        for( int i=0; i<threads.length; i++ )
+            if(threads[i]!=null)
+                r[i] = threads[i].getLiveObjectCount();
+        return r;
+    }
+}
@@ -2,9 +2,10 @@ package com4j;
 
 import java.lang.ref.ReferenceQueue;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * ComThread that enforces all calls to a COM object are performed on the same
@@ -40,7 +41,7 @@ public class ComThreadSingle implements ComThread {
      * COM objects that this thread is managing. This thread needs to stick around until they are all gone,
      * even when the peer is dead, because other threads might still want to talk to these objects.
      */
-    private Set<NativePointerPhantomReference> liveComObjects = new HashSet<NativePointerPhantomReference>();
+    final ReleaseQueue liveComObjects = new ReleaseQueue();
 
     /**
      * Listeners attached to this thread.
@@ -61,10 +62,19 @@ public class ComThreadSingle implements ComThread {
     }
 
     /**
-     * Keeps track of wrappers that should be IUnknown::release-d.
+     * Wrappers of the COM objects of this thread, if {@link WrapperIdentityMap#ENABLED}.
      */
-    final ReferenceQueue<Wrapper> collectableObjects = new ReferenceQueue<Wrapper>();
+    final WrapperIdentityMap identities = new WrapperIdentityMap();
 
+    private final ReferenceQueue<Wrapper> collectableObjects = new ReferenceQueue<Wrapper>();
+
+    /**
+     * @deprecated
+     *      The garbage collected {@link Wrapper}s go to the {@link ReleaseQueue} of this thread now.
+     *      Returns an empty queue that nothing is ever enqueued to, so that polling it can't steal
+     *      the references that com4j needs to release the interface pointers.
+     */
+    @Deprecated
     public ReferenceQueue<Wrapper> getCollectableObjects() {
         return collectableObjects;
     }
@@ -89,6 +99,16 @@ public class ComThreadSingle implements ComThread {
         return result;
     }
 
+    /**
+     * Runs the task in the current thread right away, as {@link #execute(Task)} does,
+     * and returns the already completed {@link Future}.
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        FutureTask<T> f = new FutureTask<T>(task);
+        Task.wrap(f).execute(this);
+        return f;
+    }
+
     /**
      * Adds a {@link Com4jObject} to the live objects of this {@link ComThreadMulti}
      * <p>
@@ -136,12 +156,9 @@ public class ComThreadSingle implements ComThread {
      */
     private void collectGarbage() {
         // dispose unused objects if any
-        NativePointerPhantomReference toCollect;
-        while((toCollect = (NativePointerPhantomReference)collectableObjects.poll()) != null) {
-            liveComObjects.remove(toCollect);
-            toCollect.clear();
-            toCollect.releaseNative();
-        }
+        liveComObjects.release();
+        VariantAllocator.collectGarbage();
+        CallInterface.collectGarbage();
     }
 
     /**
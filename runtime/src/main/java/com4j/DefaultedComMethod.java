@@ -54,7 +54,7 @@ public class DefaultedComMethod extends ComMethod {
         for (int vtid : vtids) {
             long newPtr = (Long) Native.invoke(
                 ptr, vtid, EMPTY_ARRAY, EMPTY_INTARRAY,
-                0, false, NativeType.ComObject.code);
+                0, false, NativeType.ComObject.code, 0);
             Native.release(ptr);
             ptr = newPtr;
         }
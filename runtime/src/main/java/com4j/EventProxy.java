@@ -163,8 +163,16 @@ final class EventProxy<T> implements EventCookie {
                     throw new ComException("Argument length mismatch. Expected "+params.length+" but found "+args.length,DISP_E_BADPARAMCOUNT);
 
                 Object[] oargs = new Object[args.length];
-                for( int i=0; i<args.length; i++ )
-                    oargs[i] = args[i].convertTo(params[i]);
+                try {
+                    for( int i=0; i<args.length; i++ )
+                        oargs[i] = args[i].convertTo(params[i]);
+                } finally {
+                    // the arguments are copies made for this call. unless they are passed as is,
+                    // nobody will see them again, so don't leave them to the garbage collector.
+                    for( int i=0; i<args.length; i++ )
+                        if(oargs[i]!=args[i])
+                            VariantAllocator.free(args[i].slot);
+                }
                 return method.invoke(o,oargs);
             } catch (InvocationTargetException e) {
                 logger.log(Level.WARNING, method+" on "+o+" reported an exception",e.getTargetException());
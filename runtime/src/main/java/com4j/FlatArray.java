@@ -0,0 +1,130 @@
+package com4j;
+
+import java.lang.reflect.Array;
+
+/**
+ * Multi-dimensional array kept in one flat Java array.
+ *
+ * <p>
+ * By default, a multi-dimensional SAFEARRAY is converted into nested Java arrays,
+ * one Java array for each row. For big arrays, such as the values of a large spreadsheet range,
+ * that means a lot of small arrays. Use {@link FlatArray} as the parameter type or the return type
+ * (or {@link NativeType#SafeArrayFlat}) instead, and all the elements are copied into
+ * one array in one pass:
+ * <pre>
+ * FlatArray foo( FlatArray args );
+ *
+ * FlatArray a = foo(...);
+ * double[] data = (double[])a.getData();
+ * double d = data[a.offset(i,j)];
+ * </pre>
+ *
+ * <p>
+ * The elements are in the row-major order of the nested Java arrays that com4j would otherwise produce,
+ * which is the order they are laid out in the SAFEARRAY. That is, {@code get(i,j)} is
+ * {@code nested[i][j]}, and the last index changes the fastest. The lower bounds of the SAFEARRAY
+ * are not kept, and the indices start from 0.
+ *
+ * <p>
+ * The data is a primitive array for a SAFEARRAY of numbers, {@code String[]} for BSTRs,
+ * and {@code Object[]} for VARIANTs.
+ */
+public final class FlatArray {
+    private final Object data;
+    private final int[] shape;
+
+    /**
+     * @param data
+     *      One-dimensional Java array that has all the elements.
+     * @param shape
+     *      The length of each dimension, from the outermost one.
+     *      Its product must be the length of the data.
+     */
+    public FlatArray(Object data, int... shape) {
+        if(!data.getClass().isArray())
+            throw new IllegalArgumentException(data.getClass()+" is not an array");
+        if(shape.length==0)
+            throw new IllegalArgumentException("no dimension");
+        int size = 1;
+        for (int s : shape) {
+            if(s<0)
+                throw new IllegalArgumentException("negative length: "+s);
+            size *= s;
+        }
+        if(size!=Array.getLength(data))
+            throw new IllegalArgumentException("the shape has "+size+" elements but the array has "+Array.getLength(data));
+        this.data = data;
+        this.shape = shape.clone();
+    }
+
+    /**
+     * Gets the one-dimensional Java array that has all the elements.
+     */
+    public Object getData() {
+        return data;
+    }
+
+    /**
+     * Gets the length of each dimension, from the outermost one.
+     */
+    public int[] getShape() {
+        return shape.clone();
+    }
+
+    /**
+     * Gets the index of the given element in {@link #getData()}.
+     */
+    public int offset(int... indices) {
+        if(indices.length!=shape.length)
+            throw new IllegalArgumentException("expected "+shape.length+" indices but got "+indices.length);
+        int r = 0;
+        for( int i=0; i<shape.length; i++ ) {
+            if(indices[i]<0 || indices[i]>=shape[i])
+                throw new ArrayIndexOutOfBoundsException(indices[i]);
+            r = r*shape[i]+indices[i];
+        }
+        return r;
+    }
+
+    /**
+     * Gets the given element, boxing it if it's primitive.
+     */
+    public Object get(int... indices) {
+        return Array.get(data,offset(indices));
+    }
+
+    /**
+     * Copies the given SAFEARRAY. The caller keeps the ownership of the SAFEARRAY.
+     */
+    static FlatArray fromSafeArray(long psa) {
+        int[] bounds = Native.getSafeArrayBounds(psa);
+        // the last dimension of SAFEARRAY is the outermost one
+        int[] shape = new int[bounds.length/2];
+        for( int i=0; i<shape.length; i++ )
+            shape[shape.length-1-i] = Math.max(0,bounds[i*2+1]-bounds[i*2]+1);
+        return new FlatArray(Native.safeArrayToFlat(psa),shape);
+    }
+
+    /**
+     * Creates a new SAFEARRAY from this array, and returns its pointer.
+     */
+    long toSafeArray() {
+        int[] bounds = new int[shape.length*2];
+        for( int i=0; i<shape.length; i++ ) {
+            bounds[i*2] = 0;
+            bounds[i*2+1] = shape[shape.length-1-i];
+        }
+        return Native.flatToSafeArray(data,bounds);
+    }
+
+    /**
+     * Creates a new {@link Variant} that owns a new SAFEARRAY created from this array.
+     */
+    Variant toVariant() {
+        long psa = toSafeArray();
+        Variant v = new Variant();
+        v.image.putLong(8,psa);
+        v.image.putShort(0,(short)(VariantConverter.VT_ARRAY|Native.getSafeArrayType(psa)));
+        return v;
+    }
+}
@@ -0,0 +1,60 @@
+package com4j;
+
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Calls the COM methods whose arguments {@link StandardComMethod} passes in an argument frame.
+ *
+ * <p>
+ * By default the calls go through {@link Native#invokeFrame(long, long, ByteBuffer, int[], int, long)}.
+ * If the system property <tt>com4j.frameInvoker</tt> is set to <tt>foreign</tt>, and the
+ * <tt>com4j-ffm</tt> module is on the classpath of a JVM that supports <tt>java.lang.foreign</tt>
+ * (JDK 22 or later), they are made through downcall method handles instead.
+ * If that implementation can't be loaded, a warning is logged and JNI is used.
+ * The other calls, and everything else, still go through the native library.
+ */
+abstract class FrameInvoker {
+    /**
+     * Same as {@link Native#invokeFrame(long, long, ByteBuffer, int[], int, long)}.
+     */
+    abstract long invoke( long pComObject, long vtIndex,
+                          ByteBuffer frame, int[] parameterConversions, int returnConversion,
+                          long callInterface );
+
+    private static final Logger LOGGER = Logger.getLogger(FrameInvoker.class.getName());
+
+    /**
+     * The implementation in use.
+     */
+    static final FrameInvoker INSTANCE;
+
+    static {
+        String name = null;
+        try {
+            name = System.getProperty("com4j.frameInvoker");
+        } catch (SecurityException e) {
+            ;
+        }
+        INSTANCE = create(name);
+    }
+
+    private static FrameInvoker create(String name) {
+        if("foreign".equals(name)) {
+            try {
+                return (FrameInvoker)Class.forName("com4j.ForeignFrameInvoker").newInstance();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to load the java.lang.foreign invoker. Using JNI instead", e);
+            } catch (LinkageError e) {
+                // typically a JVM older than the module
+                LOGGER.log(Level.WARNING, "Failed to load the java.lang.foreign invoker. Using JNI instead", e);
+            }
+        }
+        return new FrameInvoker() {
+            long invoke(long pComObject, long vtIndex, ByteBuffer frame, int[] parameterConversions, int returnConversion, long callInterface) {
+                return Native.invokeFrame(pComObject, vtIndex, frame, parameterConversions, returnConversion, callInterface);
+            }
+        };
+    }
+}
@@ -0,0 +1,29 @@
+package com4j;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a COM interface whose objects are free-threaded
+ * (registered with {@code ThreadingModel} "Free" or "Both".)
+ *
+ * <p>
+ * Objects created through {@link COM4J#createInstance(Class, String, int)} with such an interface
+ * live in the multi-threaded apartment. Method invocations on them, and on any object
+ * obtained from them, are made directly from the calling thread instead of being routed
+ * through a {@link ComThread}, if the calling thread is in the multi-threaded apartment.
+ * com4j never changes the apartment of application threads, so other threads keep
+ * going through the {@link ComThread}. To make the direct calls from a thread,
+ * initialize COM on it as a multi-threaded apartment first.
+ *
+ * <p>
+ * Only use this for COM classes that are documented to be safe to call concurrently.
+ *
+ * @see COM4J#createInstance(Class, String, int, boolean)
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+public @interface FreeThreaded {
+}
@@ -65,13 +65,55 @@ class Native {
     /**
      * Invokes a method.
      *
+     * @param callInterface
+     *      The prepared call of the method, created by {@link #createCallInterface()}, or 0.
      * @throws ComException
      *      if the invocation returns a failure HRESULT, and the return type
      *      is not HRESULT.
      */
     static native Object invoke( long pComObject, long vtIndex,
                                  Object[] args, int[] parameterConversions,
-                                 int returnIndex, boolean returnIsInOut, int returnConversion );
+                                 int returnIndex, boolean returnIsInOut, int returnConversion,
+                                 long callInterface );
+
+    /**
+     * Invokes a method whose parameters and return value are all primitives, interface pointers, or GUIDs.
+     *
+     * <p>
+     * Same as {@link #invoke(long, long, Object[], int[], int, boolean, int, long)} but without boxing.
+     * The arguments are encoded in a direct buffer of the native byte order, with an 8-byte slot for each parameter.
+     * Integers, booleans (as 0 or 1), and interface pointers are passed as their values, {@code float} and
+     * {@code double} as their raw bits, and GUIDs as the offset of their 16 bytes in the same buffer.
+     * The native side is done with the buffer before the method is called.
+     * The return value, if any, must be the last parameter, and is returned the same way.
+     *
+     * @param frame
+     *      direct buffer that has the arguments.
+     * @param returnConversion
+     *      conversion of the [out,retval] parameter, or 0 if there's none.
+     * @return
+     *      0 if there's no return value.
+     * @throws ComException
+     *      if the invocation returns a failure HRESULT.
+     */
+    static native long invokeFrame( long pComObject, long vtIndex,
+                                    ByteBuffer frame, int[] parameterConversions, int returnConversion,
+                                    long callInterface );
+
+    /**
+     * Allocates the native structure that keeps the prepared call of a method,
+     * so that its calling convention doesn't have to be computed again on every call.
+     * It's filled in by the first {@link #invoke(long, long, Object[], int[], int, boolean, int, long)}.
+     *
+     * <p>
+     * It can be shared by the invocations of the same method from any thread.
+     */
+    static native long createCallInterface();
+
+    /**
+     * Frees what {@link #createCallInterface()} allocated.
+     */
+    static native void deleteCallInterface( long callInterface );
 
     /**
      * Invokes {@code IDispatch.Invoke}.
@@ -123,6 +165,15 @@ class Native {
      * Calls "CoInitialize"
      */
     static native void coInitialize();
+    /**
+     * Calls "CoInitializeEx" to enter the multi-threaded apartment.
+     */
+    static native void coInitializeMTA();
+    /**
+     * Calls "CoGetApartmentType" to see if the current thread is in the multi-threaded apartment,
+     * without initializing COM on it.
+     */
+    static native boolean isMTA();
     /**
      * Calls "CoUninitialize"
      */
@@ -147,4 +198,57 @@ class Native {
      * Creates a direct buffer.
      */
     static native ByteBuffer createBuffer(long ptr, int size);
+
+    /**
+     * Calls <tt>SafeArrayCreate</tt>.
+     *
+     * @param bounds
+     *      (lower bound, number of elements) pairs, one for each dimension.
+     * @return
+     *      pointer to the new SAFEARRAY.
+     */
+    static native long createSafeArray(int vt, int[] bounds);
+
+    /**
+     * Calls <tt>SafeArrayDestroy</tt>.
+     */
+    static native void destroySafeArray(long psa);
+
+    /**
+     * Calls <tt>SafeArrayAccessData</tt>, and returns the data of the SAFEARRAY as a direct buffer.
+     */
+    static native ByteBuffer lockSafeArray(long psa);
+
+    /**
+     * Calls <tt>SafeArrayUnaccessData</tt>.
+     */
+    static native void unlockSafeArray(long psa);
+
+    /**
+     * Gets the VARTYPE of the elements of the SAFEARRAY.
+     */
+    static native int getSafeArrayType(long psa);
+
+    /**
+     * Gets the bounds of the SAFEARRAY as (lower bound, upper bound) pairs, one for each dimension.
+     */
+    static native int[] getSafeArrayBounds(long psa);
+
+    /**
+     * Copies all the elements of the SAFEARRAY into a new one-dimensional Java array,
+     * in the order they are laid out in the SAFEARRAY.
+     */
+    static native Object safeArrayToFlat(long psa);
+
+    /**
+     * Creates a new SAFEARRAY from a one-dimensional Java array,
+     * in the order they are laid out in the SAFEARRAY.
+     *
+     * @param bounds
+     *      (lower bound, number of elements) pairs, one for each dimension.
+     *      The total number of elements must match the length of the Java array.
+     * @return
+     *      pointer to the new SAFEARRAY.
+     */
+    static native long flatToSafeArray(Object data, int[] bounds);
 }
@@ -8,15 +8,55 @@ import java.lang.ref.ReferenceQueue;
  * reference is enqueued, the ComThread will release the native reference.
  *
  * @author mpoindexter
+ * @see ReleaseQueue
  */
 public class NativePointerPhantomReference extends PhantomReference<Wrapper> {
 	private long ptr;
-	
+
+	/**
+	 * The {@link ReleaseQueue} of the {@link ComThread} that releases the pointer.
+	 */
+	final ReleaseQueue owner;
+
+	/**
+	 * Links in the list of the live objects, and in the stack of the pending releases.
+	 * Managed by {@link ReleaseQueue}.
+	 */
+	NativePointerPhantomReference prev, next, nextPending;
+
+	/**
+	 * The application thread on whose behalf the object was created,
+	 * if the {@link ComThread} is shared through {@link ComThreadPool}.
+	 */
+	Thread requester;
+
+	/**
+	 * @deprecated
+	 *      A reference created this way doesn't belong to any {@link ComThread}, so com4j never
+	 *      releases its pointer. It's up to whoever polls the given queue to do so.
+	 */
+	@Deprecated
 	public NativePointerPhantomReference(Wrapper wrapper, ReferenceQueue<Wrapper> queue, long ptr) {
 		super(wrapper, queue);
 		this.ptr = ptr;
+		this.owner = null;
+	}
+
+	NativePointerPhantomReference(Wrapper wrapper, ReleaseQueue owner, long ptr) {
+		super(wrapper, ReleaseQueue.COLLECTED);
+		this.ptr = ptr;
+		this.owner = owner;
 	}
-	
+
+	/**
+	 * Creates the sentinel of a list.
+	 */
+	NativePointerPhantomReference() {
+		super(null, null);
+		this.owner = null;
+		prev = next = this;
+	}
+
 	void releaseNative() {
         if (ptr!=0) {
     		Native.release(ptr);
@@ -271,7 +271,7 @@ public enum NativeType {
                 }
                 Com4jObject base = Wrapper.create((Long) param);
                 IEnumVARIANT enumVar = base.queryInterface(IEnumVARIANT.class);
-                base.dispose();
+                Wrapper.disposeTemporary(base);
                 return new ComCollection(itemType,enumVar);
             }
             // interface pointers we get from out parameters are owned by the caller,
@@ -376,6 +376,8 @@ public enum NativeType {
                 Enum e = (Enum) param;
                 return EnumDictionary.get(e.getClass()).value(e);
             }
+            if(param instanceof FlatArray)
+                return ((FlatArray)param).toVariant();
             return param;
         }
 
@@ -407,6 +409,10 @@ public enum NativeType {
                 Enum e = (Enum) param;
                 return EnumDictionary.get(e.getClass()).value(e);
             }
+            if(param instanceof FlatArray)
+                return ((FlatArray)param).toVariant();
+            if(param instanceof Variant)
+                ((Variant)param).bindToCurrentThread();    // the callee may put an interface pointer in it
             return param;
         }
 
@@ -583,7 +589,96 @@ public enum NativeType {
      * </ul>
      */
     SafeArray(500,24),
-    SafeArray_ByRef(500|BYREF,4);
+    SafeArray_ByRef(500|BYREF,4),
+
+    /**
+     * <tt>SAFEARRAY*</tt> that stays in the native memory.
+     *
+     * <p>
+     * Unlike {@link #SafeArray}, nothing is copied from or to a Java array.
+     * A returned SAFEARRAY is owned by the caller.
+     *
+     * <p>
+     * Expected Java type:
+     *      {@link com4j.SafeArray}
+     */
+    SafeArrayHandle(501,4) {
+        // the native code will see the raw pointer value as Long
+        Object toNative(Object param) {
+            if(param==null)
+                return 0L;
+            return ((com4j.SafeArray)param).getPointer();
+        }
+
+        Object toJava(Class<?> signature, Type genericSignature, Object param) {
+            if(param==null || (Long)param==0)
+                return null;
+            return new com4j.SafeArray((Long)param);
+        }
+    },
+
+    /**
+     * <tt>SAFEARRAY**</tt> that stays in the native memory.
+     *
+     * <p>
+     * This is an [in,out] parameter, whose callee may destroy the SAFEARRAY it's given
+     * and return another one. So the {@link com4j.SafeArray} in the {@link Holder} is handed over
+     * to the callee: it's disposed without destroying its SAFEARRAY, and after the call
+     * the {@link Holder} gets a new {@link com4j.SafeArray} that owns whatever came back,
+     * or null.
+     *
+     * <p>
+     * Expected Java type:
+     *      {@link Holder}&lt;{@link com4j.SafeArray}&gt;
+     */
+    SafeArrayHandle_ByRef(501|BYREF,4) {
+        // the native code will see the raw pointer value as Long
+        Object holderToNative(Object value) {
+            if(value==null)
+                return 0L;
+            return ((com4j.SafeArray)value).detach();
+        }
+
+        Object holderToJava(Class<?> signature, Type genericSignature, Object value) {
+            return SafeArrayHandle.toJava(signature,genericSignature,value);
+        }
+    },
+
+    /**
+     * <tt>SAFEARRAY*</tt> of any dimension, converted from and to one flat Java array.
+     *
+     * <p>
+     * Unlike {@link #SafeArray}, a multi-dimensional SAFEARRAY doesn't become
+     * nested Java arrays, so it's converted with one allocation and one pass.
+     *
+     * <p>
+     * Expected Java type:
+     *      {@link FlatArray}
+     */
+    SafeArrayFlat(502,4) {
+        // the native code will see the raw pointer value as Long
+        Object toNative(Object param) {
+            if(param==null)
+                return 0L;
+            return ((FlatArray)param).toSafeArray();
+        }
+
+        Object toJava(Class<?> signature, Type genericSignature, Object param) {
+            if(param==null || (Long)param==0)
+                return null;
+            long psa = (Long)param;
+            try {
+                return FlatArray.fromSafeArray(psa);
+            } finally {
+                Native.destroySafeArray(psa);
+            }
+        }
+
+        void cleanupNative(Object param) {
+            if(param!=null && (Long)param!=0)
+                Native.destroySafeArray((Long)param);
+        }
+    };
 
 
     /**
@@ -597,6 +692,13 @@ public enum NativeType {
      */
     final int size;
 
+    /**
+     * False if {@link #toNative(Object)}, {@link #toJava(Class, Type, Object)}, and
+     * {@link #cleanupNative(Object)} respectively are no-ops for this type,
+     * so that {@link ParameterConverter} can skip them.
+     */
+    final boolean hasToNative,hasToJava,hasCleanupNative;
+
     private static final Map<Integer,NativeType> codeMap = new HashMap<Integer, NativeType>();
 
     static {
@@ -608,6 +710,24 @@ public enum NativeType {
     NativeType( int code, int size ) {
         this.code = code;
         this.size = size;
+        this.hasToNative = overrides("toNative",Object.class);
+        this.hasToJava = overrides("toJava",Class.class,Type.class,Object.class);
+        this.hasCleanupNative = overrides("cleanupNative",Object.class);
+    }
+
+    /**
+     * Checks if the constant-specific class body overrides the given method.
+     */
+    private boolean overrides(String name, Class<?>... parameterTypes) {
+        Class<?> c = getClass();
+        if(c==NativeType.class)
+            return false;   // no class body
+        try {
+            c.getDeclaredMethod(name,parameterTypes);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
     }
 
     /**
@@ -635,6 +755,25 @@ public enum NativeType {
         return param;
     }
     
+    /**
+     * Converts the value of the {@link Holder} of a BYREF parameter before the call.
+     * By default, it's converted like a parameter of the type {@link #getNoByRef()}.
+     */
+    Object holderToNative(Object value) {
+        return getNoByRef().toNative(value);
+    }
+
+    /**
+     * Converts the value of the {@link Holder} of a BYREF parameter after the call.
+     * The opposite of {@link #holderToNative(Object)}.
+     *
+     * @param signature         the type parameter of the {@link Holder} in its raw form.
+     * @param genericSignature  the type parameter of the {@link Holder} in its generified form.
+     */
+    Object holderToJava(Class<?> signature, Type genericSignature, Object value) {
+        return getNoByRef().toJava(signature,genericSignature,value);
+    }
+
     void cleanupNative(Object nativeValue) {
     	//By default do nothing.  Some subclasses will use 
     	//this hook to clean up any resources they allocated
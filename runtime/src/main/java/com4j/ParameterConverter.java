@@ -0,0 +1,153 @@
+package com4j;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts one parameter of a {@link ComMethod} between its Java form and its native form.
+ *
+ * <p>
+ * {@link ComMethod} compiles its parameters into arrays of these once, so that an invocation
+ * only loops over the parameters that actually need work, instead of going through
+ * {@link NativeType} and reflecting on the {@link Holder} types of every parameter on every call.
+ * Most parameters (numbers, strings, booleans, ...) don't get a converter at all.
+ */
+abstract class ParameterConverter {
+    /**
+     * Index of the parameter in the argument array.
+     */
+    final int index;
+
+    ParameterConverter(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Converts the parameter in place.
+     */
+    abstract void convert(Object[] args);
+
+    /**
+     * Builds the converters that run before the call.
+     *
+     * @see ComMethod#messageParameters(Object[])
+     */
+    static ParameterConverter[] toNative(NativeType[] params, Class<?>[] paramTypes) {
+        List<ParameterConverter> r = new ArrayList<ParameterConverter>();
+        for( int i=0; i<params.length; i++ ) {
+            if(paramTypes[i].isPrimitive())
+                continue;   // only enums, dates, and objects are converted. never the boxed primitives.
+
+            final NativeType t = params[i];
+            final NativeType noByRef = t.getNoByRef();
+            if(noByRef!=null && noByRef.hasToNative) {
+                r.add(new ParameterConverter(i) {
+                    @SuppressWarnings("unchecked")
+                    void convert(Object[] args) {
+                        Object arg = args[index];
+                        if(arg instanceof Holder) {
+                            // massage the value of Holder, not the Holder itself
+                            Holder h = (Holder)arg;
+                            h.value = t.holderToNative(h.value);
+                        } else {
+                            args[index] = t.toNative(arg);
+                        }
+                    }
+                });
+            } else
+            if(t.hasToNative) {
+                r.add(new ParameterConverter(i) {
+                    void convert(Object[] args) {
+                        Object arg = args[index];
+                        if(noByRef==null || !(arg instanceof Holder))
+                            args[index] = t.toNative(arg);
+                    }
+                });
+            }
+        }
+        return r.toArray(new ParameterConverter[r.size()]);
+    }
+
+    /**
+     * Builds the converters that run after the call,
+     * which update the {@link Holder}s and clean up what {@link NativeType#toNative(Object)} allocated.
+     */
+    static ParameterConverter[] toJava(NativeType[] params, Type[] genericParamTypes) {
+        List<ParameterConverter> r = new ArrayList<ParameterConverter>();
+        for( int i=0; i<params.length; i++ ) {
+            final NativeType t = params[i];
+            final NativeType noByRef = t.getNoByRef();
+            final boolean unmarshal = noByRef!=null && noByRef.hasToJava;
+            if(!unmarshal && !t.hasCleanupNative)
+                continue;
+
+            final Type holderParamType = getTypeParameter(genericParamTypes[i], 0);
+            final Class<?> holderParamClass = erasure(holderParamType);
+            r.add(new ParameterConverter(i) {
+                @SuppressWarnings("unchecked")
+                void convert(Object[] args) {
+                    Object arg = args[index];
+                    if(noByRef!=null && arg instanceof Holder) {
+                        if(unmarshal) {
+                            Holder h = (Holder)arg;
+                            h.value = t.holderToJava(holderParamClass, holderParamType, h.value);
+                        }
+                    } else {
+                        t.cleanupNative(arg);
+                    }
+                }
+            });
+        }
+        return r.toArray(new ParameterConverter[r.size()]);
+    }
+
+    /**
+     * Runs all the given converters.
+     */
+    static void convert(ParameterConverter[] converters, Object[] args) {
+        for (ParameterConverter c : converters)
+            c.convert(args);
+    }
+
+    private static Type getTypeParameter( Type t, int index ) {
+        if (t instanceof ParameterizedType) {
+            ParameterizedType pt = (ParameterizedType) t;
+            return pt.getActualTypeArguments()[index];
+        } else {
+            return Object.class;
+        }
+    }
+
+    private static Class<?> erasure( Type t ) {
+        if (t instanceof Class) {
+            return (Class<?>) t;
+        }
+        if (t instanceof ParameterizedType) {
+            ParameterizedType pt = (ParameterizedType) t;
+            return erasure(pt.getRawType());
+        }
+        if (t instanceof WildcardType) {
+            WildcardType wt = (WildcardType) t;
+            Type[] ub = wt.getUpperBounds();
+            if(ub.length==0)    return Object.class;
+            else                return erasure(ub[0]);
+        }
+        if (t instanceof GenericArrayType) {
+            GenericArrayType ga = (GenericArrayType) t;
+            return Array.newInstance(erasure(ga.getGenericComponentType()),0).getClass();   // ARGH!
+        }
+        if (t instanceof TypeVariable) {
+            TypeVariable<?> tv = (TypeVariable<?>) t;
+            Type[] ub = tv.getBounds();
+            if(ub.length==0)    return Object.class;
+            else                return erasure(ub[0]);
+        }
+        throw new IllegalArgumentException(t.toString());
+    }
+}
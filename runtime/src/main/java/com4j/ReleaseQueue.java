@@ -0,0 +1,201 @@
+package com4j;
+
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps track of the COM objects of one {@link ComThread}, and releases those
+ * whose {@link Wrapper}s are garbage collected.
+ *
+ * <p>
+ * All the {@link Wrapper}s share one {@link ReferenceQueue}, which a daemon thread waits on.
+ * When a {@link Wrapper} is collected, that thread pushes its {@link NativePointerPhantomReference}
+ * to the {@link ReleaseQueue} of the owning {@link ComThread}, which is a lock-free stack,
+ * and {@link #signal() signals} the {@link ComThread} if the stack was empty.
+ * The {@link ComThread} then releases all the pending pointers in one go.
+ * So the {@link ComThread}s don't have to poll for garbage, and a burst of garbage
+ * costs just one wake-up.
+ *
+ * <p>
+ * The live objects are kept in a doubly-linked list threaded through the references themselves,
+ * so adding and removing one doesn't allocate anything.
+ *
+ * <p>
+ * The garbage collected {@link Variant}s of the {@link ComThread} that hold more than a scalar
+ * are pushed to a second stack by {@link VariantAllocator}, and are cleared along with the pointers.
+ */
+class ReleaseQueue {
+    /**
+     * Where all the {@link Wrapper}s are enqueued once they are garbage collected.
+     */
+    static final ReferenceQueue<Wrapper> COLLECTED = new ReferenceQueue<Wrapper>();
+
+    static {
+        Thread t = new Thread("com4j releaser") {
+            public void run() {
+                while(true) {
+                    try {
+                        NativePointerPhantomReference r = (NativePointerPhantomReference)COLLECTED.remove();
+                        if(r.owner!=null)
+                            r.owner.enqueue(r);
+                    } catch (InterruptedException e) {
+                        // keep going
+                    }
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Sentinel of the doubly-linked list of the live objects. Guarded by {@code this}.
+     */
+    private final NativePointerPhantomReference live = new NativePointerPhantomReference();
+
+    private int size;
+
+    /**
+     * Top of the stack of the references that are waiting to be released.
+     */
+    private final AtomicReference<NativePointerPhantomReference> pending = new AtomicReference<NativePointerPhantomReference>();
+
+    /**
+     * Top of the stack of the {@link Variant}s that are waiting to be cleared.
+     */
+    private final AtomicReference<VariantAllocator.Slot> pendingVariants = new AtomicReference<VariantAllocator.Slot>();
+
+    /**
+     * Adds a live object.
+     */
+    synchronized void add(NativePointerPhantomReference r) {
+        r.next = live.next;
+        r.prev = live;
+        live.next.prev = r;
+        live.next = r;
+        size++;
+    }
+
+    private synchronized void remove(NativePointerPhantomReference r) {
+        if(r.next==null)
+            return; // already removed
+        r.prev.next = r.next;
+        r.next.prev = r.prev;
+        r.prev = r.next = null;
+        size--;
+    }
+
+    /**
+     * Returns the number of live objects, including those that are disposed but not yet garbage collected.
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Schedules the reference to be released. Can be called from any thread.
+     */
+    final void enqueue(NativePointerPhantomReference r) {
+        NativePointerPhantomReference top;
+        do {
+            top = pending.get();
+            r.nextPending = top;
+        } while(!pending.compareAndSet(top,r));
+
+        if(top==null)
+            signal();   // otherwise the ComThread is already signalled
+    }
+
+    /**
+     * Schedules the VARIANT of a garbage collected {@link Variant} to be cleared. Can be called from any thread.
+     */
+    final void enqueue(VariantAllocator.Slot s) {
+        VariantAllocator.Slot top;
+        do {
+            top = pendingVariants.get();
+            s.nextPending = top;
+        } while(!pendingVariants.compareAndSet(top,s));
+
+        if(top==null)
+            signal();
+    }
+
+    /**
+     * Called when the first reference is scheduled to be released,
+     * to let the {@link ComThread} know that it should call {@link #release()}.
+     */
+    void signal() {
+    }
+
+    /**
+     * Releases the pointers that are scheduled to be released, and clears the {@link Variant}s.
+     * Must be called from the {@link ComThread}.
+     *
+     * @return true if anything was released.
+     */
+    final boolean release() {
+        VariantAllocator.Slot s = pendingVariants.getAndSet(null);
+        boolean released = s!=null;
+        while(s!=null) {
+            VariantAllocator.Slot next = s.nextPending;
+            s.nextPending = null;
+            VariantAllocator.release(s);
+            s = next;
+        }
+
+        NativePointerPhantomReference r = pending.getAndSet(null);
+        if(r==null)
+            return released;
+        while(r!=null) {
+            NativePointerPhantomReference next = r.nextPending;
+            r.nextPending = null;
+            remove(r);
+            r.clear();
+            r.releaseNative();
+            r = next;
+        }
+        return true;
+    }
+
+    /**
+     * Releases the live objects created on behalf of the given application thread,
+     * whether they are still referenced or not. Must be called from the {@link ComThread}.
+     *
+     * @see NativePointerPhantomReference#requester
+     */
+    final void releaseAll(Thread requester) {
+        release();
+        List<NativePointerPhantomReference> found = new ArrayList<NativePointerPhantomReference>();
+        synchronized(this) {
+            for( NativePointerPhantomReference r=live.next; r!=live; r=r.next )
+                if(r.requester==requester)
+                    found.add(r);
+        }
+        for (NativePointerPhantomReference r : found) {
+            remove(r);
+            r.clear();
+            r.releaseNative();
+        }
+    }
+
+    /**
+     * Releases all the live objects, whether they are still referenced or not.
+     * Used when the {@link ComThread} is dying.
+     */
+    final void releaseAll() {
+        release();
+        while(true) {
+            NativePointerPhantomReference r;
+            synchronized(this) {
+                r = live.next;
+                if(r==live)
+                    return;
+            }
+            remove(r);
+            r.clear();
+            r.releaseNative();
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com4j;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 /**
- * TODO: General purpose wrapper for COM SAFEARRAY.
+ * General purpose wrapper for COM SAFEARRAY.
  *
  * <p>
  * This class is provided for rare circumstances where the Java code
@@ -21,15 +24,71 @@ package com4j;
  * <p>
  * This works for the most of the cases, and is much easier to use.
  *
+ * <p>
+ * However, such an array is copied element by element into a new SAFEARRAY
+ * on every call, and the same happens to the arrays that COM methods return.
+ * For big arrays of numbers, use {@link SafeArray} as the parameter type or the return type instead.
+ * The SAFEARRAY then stays in the native memory, and its elements can be read and written
+ * through the {@link ByteBuffer} that {@link #lock()} returns, without ever copying them
+ * onto the Java heap:
+ * <pre>
+ * SafeArray foo( SafeArray args );
+ *
+ * SafeArray a = new SafeArray(Variant.Type.VT_R8, new SafeArray.Bound(0,999999));
+ * DoubleBuffer d = a.lock().asDoubleBuffer();
+ * ...
+ * a.unlock();
+ * </pre>
+ *
+ * <p>
+ * The SAFEARRAY is owned by this object, and it's never destroyed by the garbage collector,
+ * so call {@link #dispose()} once it's no longer needed, or create the {@link SafeArray}
+ * in a {@link ComScope}, which disposes it when the scope is closed.
+ * (A finalizer could destroy the SAFEARRAY while the {@link ByteBuffer} returned by
+ * {@link #lock()} is still in use, since that buffer doesn't keep this object reachable.)
+ * Passing a {@link SafeArray} to a COM method doesn't change its ownership,
+ * except through a {@code Holder<SafeArray>}, which hands it over to the method
+ * (see {@link NativeType#SafeArrayHandle_ByRef}.)
+ *
  * @author Kohsuke Kawaguchi (kk@kohsuke.org)
  */
 public final class SafeArray {
     /**
-     * Pointer to the allocated SAFEARRAY.
+     * Pointer to the allocated SAFEARRAY, or 0 if it's disposed.
+     */
+    private long ptr;
+
+    /**
+     * The data of the SAFEARRAY while it's locked. Otherwise null.
      */
-    private int ptr;
+    private ByteBuffer data;
 
-    public SafeArray( Variant.Type type, Bound[] bounds ) {
+    /**
+     * Creates a new SAFEARRAY.
+     *
+     * @param type
+     *      The type of the elements, such as {@link Variant.Type#VT_R8}.
+     * @param bounds
+     *      The bounds of each dimension, from the first one.
+     */
+    public SafeArray( Variant.Type type, Bound... bounds ) {
+        if(bounds.length==0)
+            throw new IllegalArgumentException("no dimension");
+        int[] b = new int[bounds.length*2];
+        for( int i=0; i<bounds.length; i++ ) {
+            b[i*2] = bounds[i].lbound;
+            b[i*2+1] = bounds[i].ubound-bounds[i].lbound+1;
+        }
+        this.ptr = Native.createSafeArray(type.comEnumValue(),b);
+        ComScope.track(this);
+    }
+
+    /**
+     * Wraps a SAFEARRAY that the caller owns, such as the one returned from a COM method.
+     */
+    SafeArray( long ptr ) {
+        this.ptr = ptr;
+        ComScope.track(this);
     }
 
     /**
@@ -38,8 +97,113 @@ public final class SafeArray {
     public static final class Bound {
         public int lbound;
         public int ubound;
+
+        public Bound() {
+        }
+
+        /**
+         * @param lbound
+         *      The lower bound.
+         * @param ubound
+         *      The upper bound, inclusive.
+         */
+        public Bound( int lbound, int ubound ) {
+            this.lbound = lbound;
+            this.ubound = ubound;
+        }
+    }
+
+    /**
+     * Gets the pointer to the SAFEARRAY.
+     *
+     * @throws IllegalStateException
+     *      if the SAFEARRAY is already disposed.
+     */
+    long getPointer() {
+        if(ptr==0)
+            throw new IllegalStateException("SafeArray is already disposed");
+        return ptr;
+    }
+
+    /**
+     * Gives up the ownership of the SAFEARRAY, and returns its pointer.
+     * This object is disposed afterward, without destroying the SAFEARRAY.
+     *
+     * @throws IllegalStateException
+     *      if the SAFEARRAY is already disposed, or locked.
+     */
+    long detach() {
+        if(data!=null)
+            throw new IllegalStateException("SafeArray is locked");
+        long p = getPointer();
+        ptr = 0;
+        return p;
     }
 
-    public native Object get( int... indices );
-    public native void set( int... indices );
+    /**
+     * Gets the type of the elements.
+     */
+    public Variant.Type getType() {
+        return EnumDictionary.get(Variant.Type.class).constant(Native.getSafeArrayType(getPointer()));
+    }
+
+    /**
+     * Gets the bounds of each dimension, from the first one.
+     */
+    public Bound[] getBounds() {
+        int[] b = Native.getSafeArrayBounds(getPointer());
+        Bound[] r = new Bound[b.length/2];
+        for( int i=0; i<r.length; i++ )
+            r[i] = new Bound(b[i*2],b[i*2+1]);
+        return r;
+    }
+
+    /**
+     * Locks the SAFEARRAY, and returns its elements.
+     *
+     * <p>
+     * The returned buffer is a view of the native memory, in the native byte order.
+     * The elements are laid out in the column-major order, that is, the first index
+     * changes the fastest. The buffer must not be used after {@link #unlock()}.
+     *
+     * @throws IllegalStateException
+     *      if the SAFEARRAY is already locked.
+     */
+    public ByteBuffer lock() {
+        if(data!=null)
+            throw new IllegalStateException("SafeArray is already locked");
+        data = Native.lockSafeArray(getPointer()).order(ByteOrder.nativeOrder());
+        return data;
+    }
+
+    /**
+     * Unlocks the SAFEARRAY locked by {@link #lock()}.
+     */
+    public void unlock() {
+        if(data==null)
+            throw new IllegalStateException("SafeArray is not locked");
+        data = null;
+        Native.unlockSafeArray(getPointer());
+    }
+
+    /**
+     * Returns true if the SAFEARRAY is locked.
+     */
+    public boolean isLocked() {
+        return data!=null;
+    }
+
+    /**
+     * Destroys the SAFEARRAY, unlocking it first if necessary.
+     * Does nothing if it's already disposed.
+     */
+    public void dispose() {
+        if(ptr==0)
+            return;
+        if(data!=null)
+            unlock();
+        long p = ptr;
+        ptr = 0;
+        Native.destroySafeArray(p);
+    }
 }
@@ -1,12 +1,9 @@
 package com4j;
 
-import java.lang.reflect.Array;
-import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.Method;
-import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
-import java.lang.reflect.TypeVariable;
-import java.lang.reflect.WildcardType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * {@link ComMethod} that represents a single method invocation
@@ -19,6 +16,39 @@ final class StandardComMethod extends ComMethod {
 
     final int vtIndex;
 
+    /**
+     * {@link Method#getReturnType()} and {@link Method#getGenericReturnType()},
+     * which copy their results on every call.
+     */
+    private final Class<?> returnType;
+    private final Type genericReturnType;
+
+    /**
+     * False if {@link #returnConv} doesn't need to convert the return value.
+     */
+    private final boolean convertsReturnValue;
+
+    /**
+     * True if all the parameters and the return value can be passed in an argument frame,
+     * in which case we use {@link FrameInvoker}.
+     */
+    private final boolean framed;
+
+    /**
+     * Size of the argument frame in bytes. A slot of 8 bytes for each parameter,
+     * followed by 16 bytes for each {@link GUID}.
+     */
+    private final int frameSize;
+
+    /**
+     * The native structure that keeps the prepared call of this method.
+     * Allocated on the first invocation, since the native library may not be loaded yet
+     * when the method is introspected, and freed once this method is garbage collected.
+     *
+     * @see CallInterface
+     */
+    private volatile long callInterface;
+
     StandardComMethod( Method m ) {
         super(m);
 
@@ -26,74 +56,224 @@ final class StandardComMethod extends ComMethod {
         if(vtid==null)
             throw new IllegalAnnotationException("@VTID is missing: "+m.toGenericString());
         vtIndex = vtid.value();
+        returnType = m.getReturnType();
+        genericReturnType = m.getGenericReturnType();
+        convertsReturnValue = returnIndex!=-1 && returnConv.hasToJava
+            // the most common case. Int32 only converts enums
+            && !(returnConv==NativeType.Int32 && !Enum.class.isAssignableFrom(returnType));
+        framed = isFramed();
+
+        int size = params.length*8;
+        for (NativeType t : params)
+            if(t==NativeType.GUID)
+                size += 16;
+        frameSize = size;
+    }
+
+    private boolean isFramed() {
+        for( int i=0; i<params.length; i++ )
+            if(!isFramed(paramTypes[i],params[i]))
+                return false;
+
+        if(returnIndex==-1)
+            return true;    // void
+        // the return value comes back with the same Java type as from Native.invoke,
+        // so it doesn't matter what the Java return type is
+        return returnIndex==params.length && !returnIsInOut
+            && (isPrimitive(returnConv) || returnConv==NativeType.ComObject);
+    }
+
+    /**
+     * Checks if a parameter of the given type can be encoded in an argument frame
+     * after the {@link ParameterConverter}s have run.
+     */
+    private static boolean isFramed(Class<?> type, NativeType t) {
+        if(type==boolean.class || type==Boolean.class)
+            return t==NativeType.Bool || t==NativeType.VariantBool;
+        if(type.isPrimitive() || Number.class.isAssignableFrom(type))
+            return isPrimitive(t) && t!=NativeType.Bool && t!=NativeType.VariantBool;
+        if(Enum.class.isAssignableFrom(type))
+            return t==NativeType.Int16 || t==NativeType.Int32;
+        if(Com4jObject.class.isAssignableFrom(type))
+            return t==NativeType.ComObject;
+        if(type==GUID.class)
+            return t==NativeType.GUID;
+        return false;
+    }
+
+    private static boolean isPrimitive(NativeType t) {
+        switch(t) {
+        case Int8:
+        case Int16:
+        case Int32:
+        case Int64:
+        case Bool:
+        case VariantBool:
+        case Float:
+        case Double:
+            return true;
+        default:
+            return false;
+        }
     }
 
     Object invoke( long ptr, Object[] args ) {
+        if(framed)
+            return invokeFramed(ptr,args);
+
         messageParameters(args);
 
         try {
             Object r = Native.invoke( ptr, vtIndex, args, paramConvs,
-                returnIndex, returnIsInOut, returnConv.code );
-            return returnConv.toJava(method.getReturnType(), method.getGenericReturnType(), r);
+                returnIndex, returnIsInOut, returnConv.code, getCallInterface() );
+            if(!convertsReturnValue)
+                return r;
+            return returnConv.toJava(returnType, genericReturnType, r);
         } catch( ComException e ) {
-            try {
-                IErrorInfo pErrorInfo = Native.getErrorInfo(ptr, (Class)method.getDeclaringClass());
-                if(pErrorInfo!=null) {
-                    e.setErrorInfo(new ErrorInfo(pErrorInfo));
-                    pErrorInfo.dispose();   // don't keep it for too long
-                }
-            } catch (ComException x) {
-                // some user reported that some program fails to report error info.
-                // originally error information is normally more useful, so just report that.
-            }
-            throw e;
+            throw attachErrorInfo(ptr,e);
         } finally {
-            for( int i=0; i<args.length; i++ ) {
-                if(args[i] instanceof Holder && params[i].getNoByRef()!=null) {
-                    Holder h = (Holder)args[i];
-                    Type holderParamType = getTypeParameter(genericParamTypes[i], 0);
-                    h.value = params[i].getNoByRef().toJava(erasure(holderParamType), holderParamType, h.value);
-                } else {
-                	params[i].cleanupNative(args[i]);
-                }
-            }
+            ParameterConverter.convert(toJavaConverters,args);
         }
     }
 
 
-    private static Type getTypeParameter( Type t, int index ) {
-        if (t instanceof ParameterizedType) {
-            ParameterizedType pt = (ParameterizedType) t;
-            return pt.getActualTypeArguments()[index];
-        } else {
-            return Object.class;
+    /**
+     * Encodes the arguments into the argument frame of the current thread,
+     * so that the native side doesn't have to unbox each of them through JNI, nor box the return value.
+     */
+    private Object invokeFramed( long ptr, Object[] args ) {
+        messageParameters(args);
+
+        ByteBuffer frame = getFrame(frameSize);
+        int guidOffset = args.length*8;
+        for( int i=0; i<args.length; i++ ) {
+            Object arg = args[i];
+            long bits;
+            if(params[i]==NativeType.GUID) {
+                if(!(arg instanceof long[]))
+                    throw badArgument(i,arg);
+                // the slot points to the GUID in the frame
+                long[] v = (long[])arg;
+                frame.putLong(guidOffset,v[0]);
+                frame.putLong(guidOffset+8,v[1]);
+                bits = guidOffset;
+                guidOffset += 16;
+            } else {
+                bits = toBits(i,arg);
+            }
+            frame.putLong(i*8,bits);
         }
+
+        long r;
+        try {
+            r = FrameInvoker.INSTANCE.invoke(ptr, vtIndex, frame, paramConvs,
+                returnIndex==-1 ? 0 : returnConv.code, getCallInterface());
+        } catch( ComException e ) {
+            throw attachErrorInfo(ptr,e);
+        }
+
+        if(returnIndex==-1)
+            return null;
+        return fromBits(r);
     }
 
-    private static Class<?> erasure( Type t ) {
-        if (t instanceof Class) {
-            return (Class<?>) t;
+    /**
+     * Decodes the return value that {@link FrameInvoker}
+     * passed back as raw bits.
+     */
+    Object fromBits( long r ) {
+        Object v;
+        switch(returnConv) {
+        case Int8:      v = (byte)r;    break;
+        case Int16:     v = (short)r;   break;
+        case Int32:     v = (int)r;     break;
+        case Bool:
+        case VariantBool:
+                        v = r!=0;       break;
+        case Float:     v = Float.intBitsToFloat((int)r);   break;
+        case Double:    v = Double.longBitsToDouble(r);     break;
+        case ComObject:
+            if(r==0)
+                return null;    // NULL interface pointer, for both Com4jObject and Iterator
+            v = r;
+            break;
+        default:        v = r;          break;  // Int64
         }
-        if (t instanceof ParameterizedType) {
-            ParameterizedType pt = (ParameterizedType) t;
-            return erasure(pt.getRawType());
+        if(!convertsReturnValue)
+            return v;
+        return returnConv.toJava(returnType, genericReturnType, v);
+    }
+
+    /**
+     * Encodes a scalar argument, as the {@link ParameterConverter}s left it, into a slot of the frame.
+     * Integers and booleans (as 0 or 1) are passed as their values, {@code float} and {@code double}
+     * as their raw bits, and interface pointers as the {@link Long} that {@link NativeType#ComObject} made.
+     */
+    long toBits( int i, Object arg ) {
+        NativeType t = params[i];
+        if(arg instanceof Boolean && (t==NativeType.Bool || t==NativeType.VariantBool))
+            return (Boolean)arg ? 1 : 0;
+        if(!(arg instanceof Number))
+            throw badArgument(i,arg);
+
+        Number n = (Number)arg;
+        switch(t) {
+        case Float:
+            return Float.floatToRawIntBits(n.floatValue());
+        case Double:
+            return Double.doubleToRawLongBits(n.doubleValue());
+        case Bool:
+        case VariantBool:
+            return n.longValue()!=0 ? 1 : 0;
+        default:
+            return n.longValue();
         }
-        if (t instanceof WildcardType) {
-            WildcardType wt = (WildcardType) t;
-            Type[] ub = wt.getUpperBounds();
-            if(ub.length==0)    return Object.class;
-            else                return erasure(ub[0]);
+    }
+
+    private IllegalArgumentException badArgument( int i, Object arg ) {
+        return new IllegalArgumentException("Parameter "+i+" of "+method.toGenericString()
+            +" can't be passed as "+params[i]+": "+(arg==null ? "null" : arg.getClass().getName()));
+    }
+
+    /**
+     * Argument frames, one per thread, since the native side is done with them
+     * before the COM method is called.
+     */
+    private static final ThreadLocal<ByteBuffer> frames = new ThreadLocal<ByteBuffer>();
+
+    private static ByteBuffer getFrame(int size) {
+        ByteBuffer frame = frames.get();
+        if(frame==null || frame.capacity()<size) {
+            frame = ByteBuffer.allocateDirect(Math.max(size,256)).order(ByteOrder.nativeOrder());
+            frames.set(frame);
         }
-        if (t instanceof GenericArrayType) {
-            GenericArrayType ga = (GenericArrayType) t;
-            return Array.newInstance(erasure(ga.getGenericComponentType()),0).getClass();   // ARGH!
+        return frame;
+    }
+
+    private long getCallInterface() {
+        long ci = callInterface;
+        if(ci!=0)   return ci;
+        synchronized(this) {
+            if(callInterface==0)
+                callInterface = CallInterface.allocate(this);
+            return callInterface;
         }
-        if (t instanceof TypeVariable) {
-            TypeVariable<?> tv = (TypeVariable<?>) t;
-            Type[] ub = tv.getBounds();
-            if(ub.length==0)    return Object.class;
-            else                return erasure(ub[0]);
+    }
+
+    /**
+     * Fills in the error information that the COM object reported, if any.
+     */
+    private ComException attachErrorInfo( long ptr, ComException e ) {
+        try {
+            IErrorInfo pErrorInfo = Native.getErrorInfo(ptr, (Class)method.getDeclaringClass());
+            if(pErrorInfo!=null) {
+                e.setErrorInfo(new ErrorInfo(pErrorInfo));
+                Wrapper.disposeTemporary(pErrorInfo);   // don't keep it for too long
+            }
+        } catch (ComException x) {
+            // some user reported that some program fails to report error info.
+            // originally error information is normally more useful, so just report that.
         }
-        throw new IllegalArgumentException(t.toString());
+        return e;
     }
 }
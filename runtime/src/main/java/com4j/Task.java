@@ -22,6 +22,17 @@ abstract class Task<T> implements Callable<T> {
         return null == comThread ? null : comThread.get();
     }
 
+    /**
+     * Sets the {@link ComThread} that {@link #getComThread()} reports for the current thread,
+     * for code that runs on behalf of a {@link ComThread} without being a {@link Task}.
+     * @return the previous value.
+     */
+    static ComThread setComThread(ComThread t) {
+        ComThread old = comThread.get();
+        comThread.set(t);
+        return old;
+    }
+
     /**
      * Executes the task in a {@link ComThread}
      * @return the return value of the Task execution (returned by {@link #call()}).
@@ -55,6 +66,54 @@ abstract class Task<T> implements Callable<T> {
         }
     }
 
+    /**
+     * Implements {@link COM4J#onComThread(Com4jObject, Callable)}.
+     *
+     * <p>
+     * The failure of the task is carried back in a field rather than thrown, so that
+     * it's reported the same way whether the task ran right here or in another thread.
+     */
+    static <T> T callIn(ComThread t, final Callable<T> task) {
+        class Body extends Task<T> {
+            Throwable failure;
+
+            public T call() {
+                try {
+                    return task.call();
+                } catch (Throwable e) {
+                    failure = e;
+                    return null;
+                }
+            }
+        }
+        Body body = new Body();
+        T r = body.execute(t);
+
+        Throwable e = body.failure;
+        if(e==null)
+            return r;
+        if(e instanceof ComException)
+            throw new ComException((ComException)e);
+        if(e instanceof ExecutionException)
+            throw (ExecutionException)e;
+        if(e instanceof Error)
+            throw (Error)e;
+        throw new ExecutionException(e);
+    }
+
+    /**
+     * Adapts a {@link Runnable} (typically a {@link java.util.concurrent.FutureTask})
+     * into a {@link Task}, so that it can be scheduled to a {@link ComThread}.
+     */
+    static Task<Void> wrap(final Runnable r) {
+        return new Task<Void>() {
+            public Void call() {
+                r.run();
+                return null;
+            }
+        };
+    }
+
     /**
      * Called from {@link ComThread} to run the task.
      */
@@ -72,6 +131,17 @@ abstract class Task<T> implements Callable<T> {
         // let the calling thread know that we are done.
         notify();
     }
+
+    /**
+     * Called from {@link ComThread} instead of {@link #invoke()}
+     * when the task was queued but will never run, because the thread is gone.
+     */
+    synchronized void abort(Throwable e) {
+        result = null;
+        exception = e;
+        done = true;
+        notify();
+    }
     
     /**
      * Indicates whether this task is done executing
@@ -104,4 +174,14 @@ abstract class Task<T> implements Callable<T> {
      * TODO: do we need this field at all?
      */
     Error error;
+
+    /**
+     * The thread that scheduled this task to {@link ComThreadMulti}.
+     */
+    Thread requester;
+
+    /**
+     * Link to the next task while this task is queued in a {@link TaskQueue}.
+     */
+    volatile Task<?> next;
 }
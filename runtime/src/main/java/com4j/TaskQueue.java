@@ -0,0 +1,110 @@
+package com4j;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unbounded lock-free multi-producer/single-consumer queue of {@link Task}s.
+ *
+ * <p>
+ * Any number of threads can {@link #push(Task)} concurrently, but only one
+ * thread (the owning {@link ComThreadMulti}) may {@link #poll()}.
+ *
+ * <p>
+ * The queue is intrusive: it links tasks through {@link Task#next}, so
+ * enqueueing a task neither allocates a node nor takes a monitor. This works
+ * because a task is only ever in one queue at a time (callers hold the
+ * monitor of the task while it's being executed.)
+ *
+ * <p>
+ * The algorithm is Dmitry Vyukov's intrusive MPSC node-based queue.
+ * {@link #poll()} may transiently return null while a producer is half way
+ * through {@link #push(Task)}; producers always signal the consumer
+ * after pushing, so the consumer will come back for that task.
+ */
+final class TaskQueue {
+    /**
+     * Placeholder node that keeps the queue non-empty from the algorithm's point of view.
+     */
+    private final Task<?> stub = new Task<Void>() {
+        public Void call() {
+            throw new AssertionError();
+        }
+    };
+
+    /**
+     * The most recently pushed task. Producers swap themselves in here.
+     */
+    private final AtomicReference<Task<?>> tail = new AtomicReference<Task<?>>(stub);
+
+    /**
+     * The next task to be consumed. Only touched by the consumer thread.
+     */
+    private Task<?> head = stub;
+
+    /**
+     * Adds a task to the tail of the queue. Can be called from any thread.
+     */
+    void push(Task<?> task) {
+        task.next = null;
+        Task<?> prev = tail.getAndSet(task);
+        // between the swap and this store the consumer can't see 'task' yet.
+        prev.next = task;
+    }
+
+    /**
+     * Removes and returns the task at the head of the queue,
+     * or null if there's no task that can be consumed right now.
+     * Must only be called from the consumer thread.
+     */
+    Task<?> poll() {
+        Task<?> h = head;
+        Task<?> n = h.next;
+        if(h==stub) {
+            if(n==null)
+                return null;    // empty
+            head = n;
+            h = n;
+            n = n.next;
+        }
+        if(n!=null) {
+            head = n;
+            h.next = null;
+            return h;
+        }
+        if(h!=tail.get())
+            return null;    // a producer is in the middle of push()
+
+        // h is the last task. put the stub back behind it so that we can detach h
+        push(stub);
+        n = h.next;
+        if(n!=null) {
+            head = n;
+            h.next = null;
+            return h;
+        }
+        return null;
+    }
+
+    /**
+     * Moves up to {@code max} tasks into the given array, in FIFO order.
+     * Must only be called from the consumer thread.
+     *
+     * @return the number of tasks stored into {@code batch}.
+     */
+    int drain(Task<?>[] batch, int max) {
+        int n=0;
+        Task<?> t;
+        while(n<max && (t=poll())!=null)
+            batch[n++] = t;
+        return n;
+    }
+
+    /**
+     * Returns true if there's no task in this queue.
+     * Only a hint when called from a thread other than the consumer.
+     */
+    boolean isEmpty() {
+        Task<?> h = head;
+        return h==stub && h.next==null;
+    }
+}
@@ -1,7 +1,6 @@
 package com4j;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -38,10 +37,9 @@ public final class Variant extends Number {
     final ByteBuffer image;
 
     /**
-     * The ComThread that generated this Variant.
-     * @see ComCollection#fetch
+     * Where {@link #image} is allocated. Clears the VARIANT once this object is garbage collected.
      */
-    ComThread thread = null;
+    final VariantAllocator.Slot slot;
 
     /**
      * Bit mask of a Variant array.
@@ -378,12 +376,17 @@ public final class Variant extends Number {
      * Creates an empty {@link Variant}.
      */
     public Variant() {
-        image = ByteBuffer.allocateDirect(variantSize);
-        image.order(ByteOrder.LITTLE_ENDIAN);
-        // The initial content of a buffer is, in general, undefined. See the documentation of java.nio.Buffer.
-        byte[] b = new byte[variantSize]; // this initializes the array with zeros
-        image.put(b); // this prints the zeros to the buffer to guarantee, that the buffer is initialized with zeros.
-        image.position(0);
+        this(false);
+        ComScope.track(this);
+    }
+
+    /**
+     * Creates an empty {@link Variant} that isn't recorded in any {@link ComScope},
+     * for those that com4j keeps for itself.
+     */
+    Variant(boolean untracked) {
+        slot = VariantAllocator.allocate(this,variantSize);
+        image = slot.image;
     }
 
     /**
@@ -405,20 +408,26 @@ public final class Variant extends Number {
      * you should first clear it.
      */
     public void clear() {
-        clear0(image);
+        if(VariantConverter.isScalar(VariantConverter.getVarType(image)))
+            image.putShort(0,(short)0);    // owns nothing, so no need for VariantClear
+        else
+            clear0(image);
     }
 
     /**
-     * Makes sure the variant is cleared before GC-ed.
+     * Makes the current {@link ComThread}, if any, the one this {@link Variant} belongs to,
+     * before COM puts something in it that needs to be released there.
      */
-    public void finalize() {
-        clear();
+    void bindToCurrentThread() {
+        ComThread t = VariantAllocator.currentComThread();
+        if(t!=null)
+            slot.thread = t;
     }
 
     /**
      * Calls <tt>VariantClear</tt> method.
      */
-    private static native void clear0( ByteBuffer image );
+    static native void clear0( ByteBuffer image );
 
     /**
      * Sets the type of the variant.
@@ -447,22 +456,34 @@ public final class Variant extends Number {
 
     /**
      * Changes the variant type to the specified one.
+     *
+     * <p>
+     * Scalars are converted by {@link VariantConverter} without the native code.
      */
     private void changeType( Type t ) {
-      if(getType() != t){
-        changeType0( t.comEnumValue(), image );
+      int vt = t.comEnumValue();
+      if(VariantConverter.getVarType(image) != vt){
+        if(!VariantConverter.changeType(image,vt))
+          changeType0( vt, image );
       }
     }
 
+    /**
+     * Prepares this VARIANT to be overwritten by a scalar value.
+     * A scalar VARIANT doesn't own anything, so only the others need to be cleared.
+     */
+    private void prepareSet() {
+      if(!VariantConverter.isScalar(VariantConverter.getVarType(image)))
+        clear();
+    }
+
     /**
      * Changes the type of the Variant to {@link Type#VT_I1} and returns the byte represented by this Variant
      * @return The byte value of the Variant
      */
     public byte byteValue() {
       changeType(Type.VT_I1);
-      byte[] b = new byte[1];
-      image.get(b);
-      return b[0];
+      return image.get(8);
     }
 
     /**
@@ -470,8 +491,8 @@ public final class Variant extends Number {
      * @param i The new value.
      */
     public void set(byte i) {
-        changeType(Type.VT_I1);
-        image.putInt(8,i);
+        prepareSet();
+        VariantConverter.setIntegral(image,VariantConverter.VT_I1,i);
     }
 
     /**
@@ -488,8 +509,8 @@ public final class Variant extends Number {
      * @param i The new value.
      */
     public void set(short i) {
-        changeType(Type.VT_I2);
-        image.putInt(8,i);
+        prepareSet();
+        VariantConverter.setIntegral(image,VariantConverter.VT_I2,i);
     }
 
     /**
@@ -508,8 +529,8 @@ public final class Variant extends Number {
      */
     public void set(int i) {
       // does also work and uses the native part: set0(i, image);
-        changeType(Type.VT_I4);
-        image.putInt(8,i);
+        prepareSet();
+        VariantConverter.setIntegral(image,VariantConverter.VT_I4,i);
     }
 
     /**
@@ -527,8 +548,8 @@ public final class Variant extends Number {
      * @param i The new value.
      */
     public void set(long i) {
-        changeType(Type.VT_I8);
-        image.putLong(8,i);
+        prepareSet();
+        VariantConverter.setIntegral(image,VariantConverter.VT_I8,i);
     }
 
     /**
@@ -565,8 +586,8 @@ public final class Variant extends Number {
      * @param f The new value.
      */
     public void set(float f) {
-        changeType(Type.VT_R4);
-        image.putFloat(8,f);
+        prepareSet();
+        VariantConverter.setFloating(image,VariantConverter.VT_R4,f);
     }
 
     /**
@@ -583,8 +604,8 @@ public final class Variant extends Number {
      * @param d The new value.
      */
     public void set(double d) {
-        changeType(Type.VT_R8);
-        image.putDouble(8,d);
+        prepareSet();
+        VariantConverter.setFloating(image,VariantConverter.VT_R8,d);
     }
 
     /**
@@ -592,8 +613,8 @@ public final class Variant extends Number {
      * @param b The new value.
      */
     public void set(boolean b){
-      changeType(Type.VT_BOOL);
-      image.putShort(8, (short) (b ? 0xffff : 0));
+      prepareSet();
+      VariantConverter.setBoolean(image,b);
     }
 
     /**
@@ -602,7 +623,7 @@ public final class Variant extends Number {
      */
     public boolean booleanValue(){
       changeType(Type.VT_BOOL);
-      return image.getShort(8) == 0xffff;
+      return image.getShort(8) != 0;
     }
 
     /**
@@ -757,8 +778,8 @@ public final class Variant extends Number {
     public <T extends Com4jObject> T object( final Class<T> type ) {
         // native method invocation changeType needs to happen in the COM thread, that is responsible for this variant
         // @see ComCollection#fetch
-        ComThread t = thread != null ? thread : ComThreadMulti.get();
-        return t.execute(new Task<T>() {
+        ComThread t = slot.thread != null ? slot.thread : ComThreadMulti.get();
+        return new Task<T>() {
             public T call() {
                 Com4jObject wrapper = convertTo(Com4jObject.class);
                 if(null == wrapper) {
@@ -766,7 +787,7 @@ public final class Variant extends Number {
                 }
 
                 T ret = wrapper.queryInterface(type);
-                wrapper.dispose();
+                Wrapper.disposeTemporary(wrapper);
                 return ret;
             }
         }.execute(t);
@@ -778,7 +799,16 @@ public final class Variant extends Number {
      * @param <T> The type of the return value.
      * @return An object of type &lt;T&gt;
      */
-    public native <T> T convertTo( Class<T> type );
+    @SuppressWarnings("unchecked")
+    public <T> T convertTo( Class<T> type ) {
+        // scalars are decoded in Java. strings, objects, and arrays need the native code
+        Object r = VariantConverter.convertTo(this,type);
+        if(r!=VariantConverter.NATIVE)
+            return (T)r;
+        return convertTo0(type);
+    }
+
+    private native <T> T convertTo0( Class<T> type );
 
     /**
      * Represents the special variant instance used for
@@ -789,7 +819,7 @@ public final class Variant extends Number {
      *      this gets passed into as a reference), so it's fundamentally unsafe.
      *      use {@link #getMissing()} instead.
      */
-    public static final Variant MISSING = new Variant();
+    public static final Variant MISSING = new Variant(true);
 
     /**
      * Generates a new Variant object, representing the VARIANT MISSING
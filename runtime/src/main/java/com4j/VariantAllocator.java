@@ -0,0 +1,264 @@
+package com4j;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Allocates the memory of {@link Variant}s, and clears the {@link Variant}s that are garbage collected.
+ *
+ * <p>
+ * A VARIANT is only 16 or 24 bytes, so allocating a direct buffer for each of them is expensive.
+ * Instead, the memory is sliced from bigger direct buffers (slabs), and the slots of the
+ * {@link Variant}s that are gone are reused. A slab goes back to the system when it's garbage
+ * collected, which happens once none of its slots are in use and it isn't kept for reuse.
+ *
+ * <p>
+ * {@link Variant}s used to be cleared by their finalizer. Now a {@link PhantomReference} is kept
+ * for each of them instead, and the {@link Variant}s that became unreachable are cleared
+ * when the next one is allocated, or when a {@link ComThread} collects its garbage.
+ * This keeps the load off the finalizer thread.
+ *
+ * <p>
+ * That can be any thread, so only the VARIANTs that hold scalars, which own nothing, are
+ * reset there. The others may hold interface pointers that must be released in their
+ * apartment, so they are handed to the {@link ReleaseQueue} of the {@link ComThread}
+ * the {@link Variant} belongs to, which clears them the next time it collects its garbage.
+ * Those that never had anything to do with a {@link ComThread} are cleared wherever they are found.
+ *
+ * @see VariantPool
+ */
+final class VariantAllocator {
+    /**
+     * Number of VARIANTs in a slab.
+     */
+    private static final int SLAB_SIZE = 64;
+
+    /**
+     * Number of free slots we keep at most. The rest are left to the garbage collector.
+     */
+    private static final int MAX_FREE_SLOTS = 1024;
+
+    private static final Object lock = new Object();
+
+    /**
+     * Free slots, used as a stack. Guarded by {@link #lock}.
+     */
+    private static final ByteBuffer[] free = new ByteBuffer[MAX_FREE_SLOTS];
+    private static int freeCount;
+
+    /**
+     * Sentinel of the doubly-linked list of the {@link Slot}s in use,
+     * which keeps the {@link PhantomReference}s reachable. Guarded by {@link #lock}.
+     */
+    private static final Slot live = new Slot();
+
+    private static final ReferenceQueue<Variant> collected = new ReferenceQueue<Variant>();
+
+    private VariantAllocator() {}
+
+    /**
+     * The memory of one {@link Variant}.
+     */
+    static final class Slot extends PhantomReference<Variant> {
+        /**
+         * The VARIANT. Strongly referenced from here, so that it can be cleared after the {@link Variant} is gone.
+         */
+        final ByteBuffer image;
+
+        /**
+         * The {@link ComThread} the {@link Variant} belongs to, or null if none.
+         * Initially the one it was created on.
+         *
+         * @see Variant#bindToCurrentThread()
+         */
+        volatile ComThread thread;
+
+        private Slot prev,next;
+
+        /**
+         * Next in the stack of {@link ReleaseQueue}, while this is waiting to be cleared.
+         */
+        Slot nextPending;
+
+        private Slot(Variant owner, ByteBuffer image, ComThread thread) {
+            super(owner,collected);
+            this.image = image;
+            this.thread = thread;
+        }
+
+        /**
+         * Creates the sentinel.
+         */
+        private Slot() {
+            super(null,null);
+            this.image = null;
+            this.thread = null;
+            prev = next = this;
+        }
+    }
+
+    /**
+     * Allocates the zero-cleared memory of a new {@link Variant}.
+     *
+     * @param size
+     *      The size of a VARIANT.
+     */
+    static Slot allocate(Variant owner, int size) {
+        collectGarbage();
+        ComThread thread = currentComThread();
+
+        synchronized(lock) {
+            ByteBuffer image;
+            if(freeCount>0) {
+                image = free[--freeCount];
+                free[freeCount] = null;
+                for( int i=0; i<size; i+=8 )
+                    image.putLong(i,0);
+            } else {
+                image = newSlab(size);
+            }
+
+            Slot s = new Slot(owner,image,thread);
+            link(s);
+            return s;
+        }
+    }
+
+    /**
+     * Allocates a new slab, and returns its first slot. The rest go to the free slots.
+     * Direct buffers start out zero-cleared.
+     */
+    private static ByteBuffer newSlab(int size) {
+        ByteBuffer slab = ByteBuffer.allocateDirect(size*SLAB_SIZE);
+        ByteBuffer first = null;
+        for( int i=0; i<SLAB_SIZE; i++ ) {
+            slab.limit((i+1)*size).position(i*size);
+            ByteBuffer slot = slab.slice().order(ByteOrder.LITTLE_ENDIAN);
+            if(first==null)
+                first = slot;
+            else
+            if(freeCount<free.length)
+                free[freeCount++] = slot;
+        }
+        return first;
+    }
+
+    /**
+     * Clears the VARIANT of a {@link Variant} that won't be used any more, and reuses its memory.
+     * Does nothing if the slot is already freed.
+     *
+     * <p>
+     * The caller must make sure that nobody has a reference to the {@link Variant}, since
+     * its memory can be handed out to another {@link Variant} right away.
+     */
+    static void free(Slot s) {
+        synchronized(lock) {
+            if(s.next==null)
+                return; // already freed
+            unlink(s);
+        }
+        s.clear();
+        release(s);
+    }
+
+    /**
+     * Clears the VARIANT of a {@link Variant}, unless the slot is already freed,
+     * in which case its memory may belong to another {@link Variant} by now.
+     *
+     * <p>
+     * <tt>VariantClear</tt> may release the last reference to a COM object, which can take
+     * a while and run arbitrary code, so it's called outside the lock. Meanwhile the slot is
+     * taken off the list, so that it can't be freed, or cleared again.
+     */
+    static void clear(Slot s) {
+        synchronized(lock) {
+            if(s.next==null)
+                return; // already freed, or being cleared
+            if(isScalar(s)) {
+                s.image.putShort(0,(short)0);
+                return;
+            }
+            unlink(s);
+        }
+        try {
+            Variant.clear0(s.image);
+        } finally {
+            synchronized(lock) {
+                link(s);
+            }
+        }
+    }
+
+    /**
+     * Clears the {@link Variant}s that are garbage collected.
+     * Those that need <tt>VariantClear</tt> in another {@link ComThread} are handed to it.
+     */
+    static void collectGarbage() {
+        Slot s;
+        while((s=(Slot)collected.poll())!=null) {
+            synchronized(lock) {
+                if(s.next==null)
+                    continue;   // already freed
+                unlink(s);
+            }
+            ComThread t = s.thread;
+            if(!isScalar(s) && t!=null && !t.isCurrentThread()) {
+                ReleaseQueue q = Wrapper.liveObjectsOf(t);
+                if(q!=null) {
+                    q.enqueue(s);
+                    continue;
+                }
+            }
+            release(s);
+        }
+    }
+
+    /**
+     * Gets the {@link ComThread} that the current thread is, or is running a {@link Task} of.
+     *
+     * @return null if none.
+     */
+    static ComThread currentComThread() {
+        ComThread t = Task.getComThread();
+        if(t!=null && t.isCurrentThread())
+            return t;
+        Thread c = Thread.currentThread();
+        if(c instanceof ComThreadMulti)
+            return (ComThreadMulti)c;
+        return null;
+    }
+
+    private static boolean isScalar(Slot s) {
+        return VariantConverter.isScalar(VariantConverter.getVarType(s.image));
+    }
+
+    private static void link(Slot s) {
+        s.next = live.next;
+        s.prev = live;
+        live.next.prev = s;
+        live.next = s;
+    }
+
+    private static void unlink(Slot s) {
+        s.prev.next = s.next;
+        s.next.prev = s.prev;
+        s.prev = s.next = null;
+    }
+
+    /**
+     * Clears the VARIANT of a slot that is no longer in use, and reuses its memory.
+     * Unless it holds a scalar, this needs to be called from the {@link ComThread} of the slot, if any.
+     */
+    static void release(Slot s) {
+        // most of them are empty or hold a scalar, which own nothing. the memory is zero-cleared when reused
+        if(!isScalar(s))
+            Variant.clear0(s.image);
+
+        synchronized(lock) {
+            if(freeCount<free.length)
+                free[freeCount++] = s.image;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com4j;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+/**
+ * Converts scalar VARIANTs in Java, without going through the native code.
+ *
+ * <p>
+ * Numbers, booleans, dates, and currencies are stored in the VARIANT itself,
+ * so they can be read from and written to {@link Variant#image} directly.
+ * The conversions follow what <tt>VariantChangeType</tt> does: floating point
+ * numbers are rounded to the nearest integer (ties to even), {@code true} is -1,
+ * and a value that doesn't fit in the target type is an overflow.
+ *
+ * <p>
+ * Strings, interface pointers, arrays, decimals, and references still need the native code.
+ * The methods of this class report that by returning false or {@link #NATIVE}.
+ */
+final class VariantConverter {
+    private VariantConverter() {}
+
+    /**
+     * Returned from {@link #convertTo(Variant, Class)} if the conversion needs the native code.
+     */
+    static final Object NATIVE = new Object();
+
+    static final int VT_EMPTY = 0;
+    static final int VT_NULL  = 1;
+    static final int VT_I2    = 2;
+    static final int VT_I4    = 3;
+    static final int VT_R4    = 4;
+    static final int VT_R8    = 5;
+    static final int VT_CY    = 6;
+    static final int VT_DATE  = 7;
+    static final int VT_ERROR = 10;
+    static final int VT_BOOL  = 11;
+    static final int VT_I1    = 16;
+    static final int VT_UI1   = 17;
+    static final int VT_UI2   = 18;
+    static final int VT_UI4   = 19;
+    static final int VT_I8    = 20;
+    static final int VT_INT   = 22;
+    static final int VT_UINT  = 23;
+    static final int VT_ARRAY = 0x2000;
+    static final int VT_BYREF = 0x4000;
+
+    /**
+     * Offset of the value in a VARIANT.
+     */
+    private static final int DATA = 8;
+
+    private static final int DISP_E_OVERFLOW = 0x8002000A;
+
+    /**
+     * The valid range of DATE, from January 1, 100 to December 31, 9999.
+     */
+    private static final double MIN_DATE = -657434.0;
+    private static final double MAX_DATE = 2958466.0;
+
+    /**
+     * Kinds of the source values.
+     */
+    private static final int INTEGRAL = 1, FLOATING = 2, CURRENCY = 3;
+
+    /**
+     * Gets the VARTYPE of the VARIANT.
+     */
+    static int getVarType(ByteBuffer image) {
+        return image.getShort(0)&0xFFFF;
+    }
+
+    /**
+     * Returns how the value of the given VARTYPE is stored, or 0 if it's not a scalar we can convert.
+     */
+    private static int kindOf(int vt) {
+        switch(vt) {
+        case VT_EMPTY:
+        case VT_I1:
+        case VT_I2:
+        case VT_I4:
+        case VT_INT:
+        case VT_I8:
+        case VT_UI1:
+        case VT_UI2:
+        case VT_UI4:
+        case VT_UINT:
+        case VT_BOOL:
+            return INTEGRAL;
+        case VT_R4:
+        case VT_R8:
+        case VT_DATE:
+            return FLOATING;
+        case VT_CY:
+            return CURRENCY;
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Returns true if the VARIANT of the given VARTYPE doesn't own anything,
+     * so that it can be overwritten without <tt>VariantClear</tt>.
+     */
+    static boolean isScalar(int vt) {
+        return kindOf(vt)!=0 || vt==VT_NULL || vt==VT_ERROR;
+    }
+
+    /**
+     * Reads an integral value.
+     */
+    private static long getIntegral(ByteBuffer image, int vt) {
+        switch(vt) {
+        case VT_EMPTY:  return 0;
+        case VT_I1:     return image.get(DATA);
+        case VT_I2:
+        case VT_BOOL:   return image.getShort(DATA);
+        case VT_I4:
+        case VT_INT:    return image.getInt(DATA);
+        case VT_I8:     return image.getLong(DATA);
+        case VT_UI1:    return image.get(DATA)&0xFFL;
+        case VT_UI2:    return image.getShort(DATA)&0xFFFFL;
+        case VT_UI4:
+        case VT_UINT:   return image.getInt(DATA)&0xFFFFFFFFL;
+        default:        throw new AssertionError(vt);
+        }
+    }
+
+    /**
+     * Converts the VARIANT to the given type in place, like <tt>VariantChangeType</tt>.
+     *
+     * @param to
+     *      One of {@link #VT_I1}, {@link #VT_I2}, {@link #VT_I4}, {@link #VT_I8},
+     *      {@link #VT_R4}, {@link #VT_R8}, {@link #VT_DATE}, and {@link #VT_BOOL}.
+     * @return
+     *      false if this conversion needs the native code, in which case the VARIANT is left untouched.
+     * @throws ComException
+     *      if the value doesn't fit in the new type.
+     */
+    static boolean changeType(ByteBuffer image, int to) {
+        int from = getVarType(image);
+        int kind = kindOf(from);
+        if(kind==0)
+            return false;
+
+        long l = 0;
+        double d = 0;
+        switch(kind) {
+        case INTEGRAL:  l = getIntegral(image,from);    break;
+        case FLOATING:  d = from==VT_R4 ? image.getFloat(DATA) : image.getDouble(DATA);  break;
+        case CURRENCY:  l = image.getLong(DATA);         break;
+        }
+
+        switch(to) {
+        case VT_I1:
+        case VT_I2:
+        case VT_I4:
+        case VT_I8:
+            long v;
+            switch(kind) {
+            case INTEGRAL:  v = l;                  break;
+            case FLOATING:  v = roundToLong(d);     break;
+            default:        v = roundCurrency(l);   break;
+            }
+            setIntegral(image,to,v);
+            return true;
+
+        case VT_BOOL:
+            boolean b = kind==FLOATING ? d!=0 : l!=0;
+            setBoolean(image,b);
+            return true;
+
+        case VT_R4:
+        case VT_R8:
+        case VT_DATE:
+            double r;
+            switch(kind) {
+            case INTEGRAL:  r = l;              break;
+            case FLOATING:  r = d;              break;
+            default:        r = l/10000.0;      break;
+            }
+            setFloating(image,to,r);
+            return true;
+
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Writes an integer, checking its range.
+     */
+    static void setIntegral(ByteBuffer image, int vt, long v) {
+        switch(vt) {
+        case VT_I1:
+            if(v<Byte.MIN_VALUE || Byte.MAX_VALUE<v)    throw overflow(v,vt);
+            write(image,vt).put(DATA,(byte)v);
+            break;
+        case VT_I2:
+            if(v<Short.MIN_VALUE || Short.MAX_VALUE<v)  throw overflow(v,vt);
+            write(image,vt).putShort(DATA,(short)v);
+            break;
+        case VT_I4:
+            if(v<Integer.MIN_VALUE || Integer.MAX_VALUE<v)  throw overflow(v,vt);
+            write(image,vt).putInt(DATA,(int)v);
+            break;
+        case VT_I8:
+            write(image,vt).putLong(DATA,v);
+            break;
+        default:
+            throw new AssertionError(vt);
+        }
+    }
+
+    static void setBoolean(ByteBuffer image, boolean b) {
+        write(image,VT_BOOL).putShort(DATA,(short)(b?-1:0));
+    }
+
+    /**
+     * Writes a floating point number, checking its range.
+     */
+    static void setFloating(ByteBuffer image, int vt, double d) {
+        switch(vt) {
+        case VT_R4:
+            if(!Double.isInfinite(d) && Math.abs(d)>Float.MAX_VALUE)    throw overflow(d,vt);
+            write(image,vt).putFloat(DATA,(float)d);
+            break;
+        case VT_R8:
+            write(image,vt).putDouble(DATA,d);
+            break;
+        case VT_DATE:
+            if(!(MIN_DATE<=d && d<MAX_DATE))    throw overflow(d,vt);
+            write(image,vt).putDouble(DATA,d);
+            break;
+        default:
+            throw new AssertionError(vt);
+        }
+    }
+
+    /**
+     * Sets the VARTYPE and zero-clears the value, assuming that the VARIANT holds a scalar.
+     */
+    private static ByteBuffer write(ByteBuffer image, int vt) {
+        image.putLong(0,vt);
+        image.putLong(DATA,0);
+        return image;
+    }
+
+    /**
+     * Rounds to the nearest integer, ties to even, like <tt>VariantChangeType</tt>.
+     */
+    private static long roundToLong(double d) {
+        double r = Math.rint(d);
+        if(!(-9.223372036854775808E18<=r && r<9.223372036854775808E18))
+            throw overflow(d,VT_I8);
+        return (long)r;
+    }
+
+    /**
+     * Converts a CURRENCY, which is scaled by 10,000, to the nearest integer, ties to even.
+     */
+    private static long roundCurrency(long cy) {
+        long q = cy/10000;
+        long rem = Math.abs(cy%10000);
+        if(rem>5000 || (rem==5000 && (q&1)!=0))
+            q += cy<0 ? -1 : 1;
+        return q;
+    }
+
+    private static ComException overflow(Object value, int vt) {
+        return new ComException("Unable to convert "+value+" to VARTYPE "+vt,DISP_E_OVERFLOW);
+    }
+
+    /**
+     * Converts the VARIANT to the given Java type, like the native <tt>convertTo</tt> does.
+     *
+     * <p>
+     * This doesn't change the VARIANT itself.
+     *
+     * @return
+     *      {@link #NATIVE} if the conversion needs the native code.
+     */
+    @SuppressWarnings("unchecked")
+    static Object convertTo(Variant v, Class<?> type) {
+        ByteBuffer image = v.image;
+        int vt = getVarType(image);
+        if(vt==VT_EMPTY || vt==VT_NULL || vt==VT_ERROR)
+            return null;
+        if(type==FlatArray.class && (vt&(VT_ARRAY|VT_BYREF))==VT_ARRAY) {
+            // the VARIANT keeps the ownership of the SAFEARRAY
+            long psa = image.capacity()>=24 ? image.getLong(DATA) : image.getInt(DATA)&0xFFFFFFFFL;
+            return FlatArray.fromSafeArray(psa);
+        }
+        if(kindOf(vt)==0)
+            return NATIVE;
+
+        // driven by the requested type, in the same order as the native code
+        int to;
+        if(Boolean.class.isAssignableFrom(type))        to = VT_BOOL;
+        else if(Float.class.isAssignableFrom(type))     to = VT_R4;
+        else if(Double.class.isAssignableFrom(type))    to = VT_R8;
+        else if(Byte.class.isAssignableFrom(type))      to = VT_I1;
+        else if(Short.class.isAssignableFrom(type))     to = VT_I2;
+        else if(Integer.class.isAssignableFrom(type))   to = VT_I4;
+        else if(Long.class.isAssignableFrom(type))      to = VT_I8;
+        else if(Date.class.isAssignableFrom(type))      to = VT_DATE;
+        else if(type==Variant.class) {
+            // a scalar is copied byte by byte
+            Variant r = new Variant();
+            for( int i=0; i<image.capacity(); i+=8 )
+                r.image.putLong(i,image.getLong(i));
+            return r;
+        }
+        else if(ComEnum.class.isAssignableFrom(type) && type.isEnum()) {
+            to = VT_I4;
+        } else
+        if(String.class.isAssignableFrom(type) || BigDecimal.class.isAssignableFrom(type)
+        || BigInteger.class.isAssignableFrom(type) || ComEnum.class.isAssignableFrom(type)
+        || Com4jObject.class.isAssignableFrom(type)) {
+            return NATIVE;
+        } else {
+            // driven by the VARTYPE
+            switch(vt) {
+            case VT_BOOL:   to = VT_BOOL;   break;
+            case VT_R4:     to = VT_R4;     break;
+            case VT_R8:     to = VT_R8;     break;
+            case VT_I1:     to = VT_I1;     break;
+            case VT_I2:
+            case VT_UI1:    to = VT_I2;     break;
+            case VT_I4:
+            case VT_INT:
+            case VT_UI2:    to = VT_I4;     break;
+            case VT_I8:
+            case VT_UI4:    to = VT_I8;     break;
+            case VT_DATE:   to = VT_DATE;   break;
+            default:        return NATIVE;  // CY, UINT
+            }
+        }
+
+        // convert a copy, so that the original is left intact
+        ByteBuffer tmp = ByteBuffer.allocate(16).order(image.order());
+        tmp.putLong(0,image.getLong(0));
+        tmp.putLong(DATA,image.getLong(DATA));
+        changeType(tmp,to);
+
+        switch(to) {
+        case VT_BOOL:   return tmp.getShort(DATA)!=0;
+        case VT_R4:     return tmp.getFloat(DATA);
+        case VT_R8:     return tmp.getDouble(DATA);
+        case VT_I1:     return tmp.get(DATA);
+        case VT_I2:     return tmp.getShort(DATA);
+        case VT_I4:
+            int i = tmp.getInt(DATA);
+            if(type.isEnum())
+                return EnumDictionary.get((Class)type,i);
+            return i;
+        case VT_I8:     return tmp.getLong(DATA);
+        case VT_DATE:   return Variant.toDate(tmp.getDouble(DATA));
+        default:        throw new AssertionError(to);
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+package com4j;
+
+/**
+ * Recycles {@link Variant}s in a loop that needs a lot of them.
+ *
+ * <p>
+ * A {@link Variant} that's no longer referenced is cleared eventually, after it's garbage collected.
+ * When a loop creates a {@link Variant} in each iteration, it's cheaper to {@link #release(Variant) release}
+ * it explicitly at the end of the iteration, and {@link #acquire() acquire} it again in the next:
+ *
+ * <pre>
+ * VariantPool pool = new VariantPool();
+ * try {
+ *   for( ... ) {
+ *     Variant v = pool.acquire();
+ *     v.set(i);
+ *     foo.bar(v);
+ *     pool.release(v);
+ *   }
+ * } finally {
+ *   pool.dispose();
+ * }
+ * </pre>
+ *
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class VariantPool {
+    private final Variant[] pool;
+    private int size;
+
+    /**
+     * Creates a pool that keeps up to 16 {@link Variant}s.
+     */
+    public VariantPool() {
+        this(16);
+    }
+
+    /**
+     * Creates a pool that keeps up to the given number of {@link Variant}s.
+     */
+    public VariantPool(int capacity) {
+        pool = new Variant[capacity];
+    }
+
+    /**
+     * Gets an empty {@link Variant}, either a released one or a new one.
+     */
+    public Variant acquire() {
+        if(size==0)
+            return new Variant();
+        Variant v = pool[--size];
+        pool[size] = null;
+        v.slot.thread = VariantAllocator.currentComThread();
+        return v;
+    }
+
+    /**
+     * Clears a {@link Variant}, and keeps it for the next {@link #acquire()}.
+     *
+     * <p>
+     * The caller must not use the {@link Variant} after this method is called.
+     * Like {@link Variant#clear()}, this needs to be called from the thread
+     * the {@link Variant} belongs to if it holds an interface pointer.
+     */
+    public void release(Variant v) {
+        if(size==pool.length) {
+            VariantAllocator.free(v.slot);
+            return;
+        }
+        v.clear();
+        pool[size++] = v;
+    }
+
+    /**
+     * Frees the {@link Variant}s kept in this pool right away,
+     * rather than leaving them to the garbage collector.
+     */
+    public void dispose() {
+        while(size>0) {
+            VariantAllocator.free(pool[--size].slot);
+            pool[size] = null;
+        }
+    }
+}
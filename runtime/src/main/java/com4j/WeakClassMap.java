@@ -0,0 +1,93 @@
+package com4j;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache keyed by {@link Class}es that doesn't keep the classes, or their class loaders, alive.
+ *
+ * <p>
+ * Lookups don't lock. The keys are weak, and so are the values, because a value
+ * typically refers back to its key through the {@link java.lang.reflect.Method}s or
+ * the classes it holds, which would keep a weak key reachable forever.
+ * Whoever uses a value must therefore keep it reachable for as long as it uses it.
+ * Then there's never more than one value in use for a class: a value is only
+ * cleared, and computed again, once nobody uses it any more.
+ */
+final class WeakClassMap<V> {
+    private final ConcurrentMap<Key,WeakReference<V>> map = new ConcurrentHashMap<Key,WeakReference<V>>();
+
+    /**
+     * Where the keys of the classes that are gone are enqueued.
+     */
+    private final ReferenceQueue<Class<?>> queue = new ReferenceQueue<Class<?>>();
+
+    /**
+     * Returns the value for the given class, or null if none.
+     */
+    V get(Class<?> c) {
+        WeakReference<V> r = map.get(new Key(c,null));
+        return r!=null ? r.get() : null;
+    }
+
+    /**
+     * Sets the value for the given class, unless it already has one.
+     *
+     * @return
+     *      The value that the class has after this call.
+     */
+    V putIfAbsent(Class<?> c, V v) {
+        expunge();
+        Key k = new Key(c,queue);
+        WeakReference<V> n = new WeakReference<V>(v);
+        while(true) {
+            WeakReference<V> r = map.putIfAbsent(k,n);
+            if(r==null)
+                return v;
+            V old = r.get();
+            if(old!=null)
+                return old;
+            if(map.replace(k,r,n))
+                return v;
+        }
+    }
+
+    /**
+     * Returns the number of entries, including those whose values are cleared.
+     */
+    int size() {
+        expunge();
+        return map.size();
+    }
+
+    private void expunge() {
+        Key k;
+        while((k=(Key)queue.poll())!=null)
+            map.remove(k);
+    }
+
+    /**
+     * Compares the classes by identity, as long as they are there.
+     */
+    private static final class Key extends WeakReference<Class<?>> {
+        private final int hash;
+
+        Key(Class<?> c, ReferenceQueue<Class<?>> queue) {
+            super(c,queue);
+            hash = System.identityHashCode(c);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if(o==this)     return true;
+            if(!(o instanceof Key))     return false;
+            Object c = get();
+            return c!=null && c==((Key)o).get();
+        }
+    }
+}
@@ -4,9 +4,10 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 
 /**
@@ -19,9 +20,9 @@ import java.util.WeakHashMap;
  *
  * <p>
  * Every wrapper owns {@link NativePointerPhantomReference} to itself. We'll have this reference queued
- * to {@link ComThread#getCollectableObjects} when GC determines that the object is no longer needed,
- * or we'll explicitly enqueue it when {@link #dispose()} is called. {@link ComThreadMulti} will periodically
- * wake up and go through the queue to release interface pointers.
+ * when GC determines that the object is no longer needed, from where it's handed to the {@link ReleaseQueue} of the {@link ComThread}, which then
+ * wakes up and releases the interface pointers in one batch. {@link #dispose()} releases
+ * the interface pointer right away.
  *
  * @author Kohsuke Kawaguchi (kk@kohsuke.org)
  * @author Michael Schnell (ScM, (C) 2008, 2009, Michael-Schnell@gmx.de)
@@ -56,11 +57,28 @@ final class Wrapper implements InvocationHandler, Com4jObject {
      */
     private volatile long hashCode=0;
 
+    /**
+     * True if this wrapper may have been handed out to more than one caller, because it's
+     * in the {@link WrapperIdentityMap} or cached by {@link #queryInterface(Class)}.
+     * com4j never disposes such a wrapper by itself.
+     *
+     * @see #disposeTemporary(Com4jObject)
+     */
+    private volatile boolean shared;
+
     /**
      * All the invocation to the wrapper COM object must go through this thread.
      */
     private final ComThread thread;
     
+    /**
+     * True if {@link #thread} lives in the multi-threaded apartment, in which case
+     * any thread in that apartment can invoke methods on {@link #ptr} directly.
+     *
+     * @see FreeThreaded
+     */
+    private final boolean freeThreaded;
+
     /**
      * A phantom reference that owns the native pointer.  When this ref is enqueue,
      * the com thread will release() the native pointer.
@@ -68,30 +86,96 @@ final class Wrapper implements InvocationHandler, Com4jObject {
     final NativePointerPhantomReference ref;
 
     /**
-     * Cached of {@link ComMethod} keyed by the method declaration.
+     * True if {@link #queryInterface(Class)} and {@link #is(Class)} remember their results.
+     * Turned on by the system property {@code com4j.cacheQueryInterface}.
      *
-     * TODO: revisit the cache design
+     * <p>
+     * COM requires the set of interfaces an object supports to stay the same,
+     * so both positive and negative answers can be reused. The catch is that
+     * {@link #queryInterface(Class)} then returns the same wrapper to every caller,
+     * so disposing it affects all of them. A disposed wrapper is never returned from the cache.
+     */
+    static final boolean CACHE_QUERY_INTERFACE;
+
+    static {
+        boolean b = false;
+        try {
+            b = Boolean.getBoolean("com4j.cacheQueryInterface");
+        } catch (SecurityException e) {
+            ;
+        }
+        CACHE_QUERY_INTERFACE = b;
+    }
+
+    /**
+     * Wrappers returned from {@link #queryInterface(Class)}, if {@link #CACHE_QUERY_INTERFACE}.
+     * Created lazily, dropped when this wrapper is disposed. Guarded by {@code this}.
      */
-    private Map<Method,ComMethod> cache = Collections.synchronizedMap(
-        new WeakHashMap<Method,ComMethod>());
+    private Map<Class<?>,Com4jObject> interfaces;
 
     /**
-     * Wraps a new COM object. The pointer needs to be addRefed by the caller if needed.
+     * Whether this object supports an interface, if {@link #CACHE_QUERY_INTERFACE}.
+     * Created lazily, dropped when this wrapper is disposed. Guarded by {@code this}.
+     */
+    private Map<GUID,Boolean> supportedInterfaces;
+
+    /**
+     * {@link ComMethod}s of the interface this wrapper is exposed as.
+     * Null if this wrapper isn't behind a proxy.
+     */
+    private final ComMethodTable methods;
+
+    /**
+     * Wraps a new COM object as a plain {@link Wrapper}, in the current {@link ComThread}.
+     * Called from the native code when a VARIANT is converted to {@link Com4jObject}.
+     * The wrapper never goes to the {@link WrapperIdentityMap}.
+     *
+     * @param ptr
+     *      Non-null interface pointer, already addRefed.
      */
     private Wrapper(long ptr) {
-        if(ptr==0)
-            throw new IllegalArgumentException();
+        this(ptr,currentComThread(),null);
+    }
 
-        ComThread thread = Task.getComThread();
-        if (null == thread)
-            thread = ComThreadMulti.get();
-        assert thread.isCurrentThread();
+    /**
+     * Wraps a new COM object. The pointer needs to be addRefed by the caller if needed.
+     */
+    Wrapper(long ptr, ComThread thread, ComMethodTable methods) {
+        this.freeThreaded = thread instanceof ComThreadMulti && ((ComThreadMulti)thread).isMTA();
+        assert freeThreaded || thread.isCurrentThread();
 
         this.ptr = ptr;
         this.thread = thread;
+        this.methods = methods;
 
-        ref = new NativePointerPhantomReference(this, thread.getCollectableObjects(), ptr);
+        ref = new NativePointerPhantomReference(this, liveObjectsOf(thread), ptr);
         thread.addLiveObject(this);
+        ComScope.track(this);
+    }
+
+    /**
+     * Gets the {@link Wrapper} behind a {@link Com4jObject}, which might be a proxy or a stub.
+     */
+    static Wrapper unwrap( Com4jObject obj ) {
+        if( obj instanceof Wrapper )
+            return (Wrapper)obj;
+        else if( obj instanceof ComStub )
+            return ((ComStub)obj).getWrapper();
+        else
+            return (Wrapper)Proxy.getInvocationHandler(obj);
+    }
+
+    /**
+     * Gets the {@link ReleaseQueue} that keeps track of the objects of the given thread.
+     *
+     * @return null if the thread isn't one of com4j's own.
+     */
+    static ReleaseQueue liveObjectsOf(ComThread thread) {
+        if(thread instanceof ComThreadMulti)
+            return ((ComThreadMulti)thread).liveComObjects;
+        if(thread instanceof ComThreadSingle)
+            return ((ComThreadSingle)thread).liveComObjects;
+        return null;
     }
 
     /**
@@ -101,12 +185,123 @@ final class Wrapper implements InvocationHandler, Com4jObject {
      */
     static <T extends Com4jObject>
     T create( Class<T> primaryInterface, long ptr ) {
-        Wrapper w = new Wrapper(ptr);
-        T r = primaryInterface.cast(Proxy.newProxyInstance(
+        return primaryInterface.cast(create0(primaryInterface,ptr));
+    }
+
+    /**
+     * @param primaryInterface
+     *      null to return the {@link Wrapper} itself.
+     */
+    private static Com4jObject create0( Class<? extends Com4jObject> primaryInterface, long ptr ) {
+        if(ptr==0)
+            throw new IllegalArgumentException();
+
+        ComThread thread = currentComThread();
+        WrapperIdentityMap identities = WrapperIdentityMap.ENABLED ? WrapperIdentityMap.of(thread) : null;
+        if(identities==null)
+            return wrap(primaryInterface,ptr,thread,0);
+
+        long iunknown = Native.queryInterface(ptr,COM4J.IID_IUnknown);
+        Native.release(iunknown);   // we only need the value
+        synchronized(identities) {
+            Com4jObject r = identities.get(iunknown,primaryInterface);
+            if(r!=null) {
+                // we already have a wrapper that holds a reference
+                Native.release(ptr);
+                return r;
+            }
+            r = wrap(primaryInterface,ptr,thread,iunknown);
+            unwrap(r).shared = true;
+            identities.put(iunknown,primaryInterface,r);
+            return r;
+        }
+    }
+
+    private static ComThread currentComThread() {
+        ComThread thread = Task.getComThread();
+        if (null == thread)
+            thread = ComThreadMulti.get();
+        return thread;
+    }
+
+    /**
+     * Disposes a wrapper that com4j obtained for its own use, unless the
+     * application may be holding the same wrapper, in which case it's left to
+     * the application or the garbage collector.
+     */
+    static void disposeTemporary(Com4jObject o) {
+        if(!unwrap(o).shared)
+            o.dispose();
+    }
+
+    /**
+     * Creates a new {@link Wrapper} and exposes it as the given interface.
+     *
+     * @param iunknown
+     *      The {@code IUnknown*} of the object if known, or 0.
+     */
+    private static Com4jObject wrap( Class<? extends Com4jObject> primaryInterface, long ptr, ComThread thread, long iunknown ) {
+        Wrapper w = new Wrapper(ptr, thread, primaryInterface!=null ? ComMethodTable.get(primaryInterface) : null);
+        w.hashCode = iunknown;
+        if(primaryInterface==null)
+            return w;
+
+        ComStub.Factory stub = getStub(primaryInterface);
+        if(stub!=null)
+            return stub.create(w);
+        return (Com4jObject)Proxy.newProxyInstance(
             primaryInterface.getClassLoader(),
             new Class<?>[]{primaryInterface},
-                w));
-        return r;
+                w);
+    }
+
+    /**
+     * {@link ComStub.Factory factories} of the stub classes generated by tlbimp,
+     * keyed by the interface they implement.
+     * The value is {@link #NO_STUB} if there's no stub for the interface.
+     * A factory is kept alive by the {@code FACTORY} field of its stub class.
+     */
+    private static final WeakClassMap<ComStub.Factory> stubs = new WeakClassMap<ComStub.Factory>();
+
+    private static final Logger LOGGER = Logger.getLogger(Wrapper.class.getName());
+
+    private static final ComStub.Factory NO_STUB = new ComStub.Factory() {
+        public ComStub create(Com4jObject wrapper) {
+            throw new AssertionError();
+        }
+    };
+
+    /**
+     * Finds the factory of the {@link ComStub} for the given interface.
+     * A stub for {@code foo.IBar} is {@code foo.IBar_Stub}, and its factory is its {@code FACTORY} field.
+     *
+     * @return null if there's no stub, in which case we'll use a {@link Proxy}.
+     */
+    private static ComStub.Factory getStub(Class<?> primaryInterface) {
+        ComStub.Factory f = stubs.get(primaryInterface);
+        if(f==null) {
+            f = NO_STUB;
+            try {
+                Class<?> clazz = Class.forName(primaryInterface.getName()+"_Stub",true,primaryInterface.getClassLoader());
+                if(ComStub.class.isAssignableFrom(clazz) && primaryInterface.isAssignableFrom(clazz)) {
+                    Object o = clazz.getField("FACTORY").get(null);
+                    if(o instanceof ComStub.Factory)
+                        f = (ComStub.Factory)o;
+                }
+            } catch (ClassNotFoundException e) {
+                // no stub. use a proxy
+            } catch (NoSuchFieldException e) {
+                // not a stub generated by tlbimp. use a proxy
+            } catch (IllegalAccessException e) {
+                // ditto
+            } catch (LinkageError e) {
+                // the stub is there but broken, or its static initializer failed.
+                // the proxy still works, and we don't want to try again on every wrap.
+                LOGGER.log(Level.WARNING, "Failed to load the stub of "+primaryInterface.getName()+". Using a proxy instead", e);
+            }
+            f = stubs.putIfAbsent(primaryInterface,f);
+        }
+        return f==NO_STUB ? null : f;
     }
 
     /**
@@ -123,8 +318,7 @@ final class Wrapper implements InvocationHandler, Com4jObject {
      * Must be run from a {@link ComThread}.
      */
     static Com4jObject create( long ptr ) {
-        Wrapper w = new Wrapper(ptr);
-        return w;
+        return create0(null,ptr);
     }
 
 
@@ -166,28 +360,30 @@ final class Wrapper implements InvocationHandler, Com4jObject {
                 throw e.getTargetException();
             }
         }
-        UseDefaultValues useDefaultValues = method.getAnnotation(UseDefaultValues.class);
-
-        if(useDefaultValues != null){
-          int defValCount = useDefaultValues.optParamIndex().length;
-          Object[] newArgs = new Object[args.length + defValCount];
-          // fill in the given arguments to the right place:
-          for(int i = 0; i < args.length; i++){
-            newArgs[useDefaultValues.paramIndexMapping()[i]] = args[i];
-          }
-          // Fill in the (optional) default values:
-          ComMethod comMethod = getMethod(method);
-          for(int i = 0; i < defValCount; i++){
-            Object defParam =  comMethod.defaultParameters[i];
-            newArgs[useDefaultValues.optParamIndex()[i]] = defParam;
-          }
-          args = newArgs;
-        }
+        return invoke0(getMethod(method),args);
+    }
+
+    /**
+     * Invokes a method on behalf of a {@link ComStub}, which has resolved
+     * the {@link ComMethod} in advance.
+     */
+    Object invoke(ComMethod method, Object[] args) {
+        if(isDisposed)
+            throw new IllegalStateException("COM object is already disposed");
+        return invoke0(method,args);
+    }
+
+    private Object invoke0(ComMethod method, Object[] args) {
+        args = method.fillDefaultParameters(args);
+
+
+        if(freeThreaded && ComThreadMulti.inMTA())
+            return invokeDirect(method,args);
 
         if(invCache==null)
             invCache = new InvocationThunk();
         try {
-            return invCache.invoke(getMethod(method),args);
+            return invCache.invoke(method,args);
         } catch (ExecutionException e) {
             if(e.getCause() instanceof ComException)
                 throw new ComException((ComException)e.getCause());
@@ -195,16 +391,27 @@ final class Wrapper implements InvocationHandler, Com4jObject {
         }
     }
 
-    private ComMethod getMethod(Method method) {
-        ComMethod r = cache.get(method);
-        if(r!=null)     return r;
+    /**
+     * Invokes the method from the current thread, bypassing {@link #thread}.
+     * Only legal for {@link #freeThreaded} objects called from the multi-threaded apartment.
+     */
+    private Object invokeDirect(ComMethod method, Object[] args) {
+        // objects returned from this call belong to the same apartment
+        ComThread old = Task.setComThread(thread);
+        try {
+            return method.invoke(ptr,args);
+        } finally {
+            Task.setComThread(old);
+        }
+    }
 
-        r = createComMethod(method);
-        cache.put(method,r);
-        return r;
+    private ComMethod getMethod(Method method) {
+        if(methods!=null)
+            return methods.get(method);
+        return ComMethodTable.get(method.getDeclaringClass()).get(method);
     }
 
-    private ComMethod createComMethod(Method method) {
+    static ComMethod createComMethod(Method method) {
         ReturnValue rv = method.getAnnotation(ReturnValue.class);
         if(rv!=null && rv.defaultPropertyThrough().length>0)
             return new DefaultedComMethod(method,rv);
@@ -242,22 +449,58 @@ final class Wrapper implements InvocationHandler, Com4jObject {
         }
     }
 
-    private void dispose0() {
+    void dispose0() {
         if (!isDisposed) {
             ref.releaseNative();
             isDisposed = true;
+            synchronized(this) {
+                // let the cached interfaces go. those who got them may still be using them.
+                interfaces = null;
+                supportedInterfaces = null;
+            }
         }
     }
 
     public <T extends Com4jObject> boolean is( Class<T> comInterface ) {
         try {
             GUID iid = COM4J.getIID(comInterface);
-            return new QITestTask(iid).execute(thread)!=0;
+            if(!CACHE_QUERY_INTERFACE)
+                return new QITestTask(iid).execute(thread)!=0;
+
+            Boolean r;
+            synchronized(this) {
+                r = supportedInterfaces!=null ? supportedInterfaces.get(iid) : null;
+            }
+            if(r==null) {
+                r = new QITestTask(iid).execute(thread)!=0;
+                cacheQueryInterface(iid,r,null,null);
+            }
+            return r;
         } catch( ComException e ) {
             return false;
         }
     }
 
+    /**
+     * Records the result of {@code QueryInterface}.
+     *
+     * @param comInterface
+     *      The interface that {@code wrapper} implements, or null if we didn't create a wrapper.
+     */
+    private synchronized void cacheQueryInterface(GUID iid, boolean supported, Class<?> comInterface, Com4jObject wrapper) {
+        if(isDisposed)
+            return;
+        if(supportedInterfaces==null)
+            supportedInterfaces = new HashMap<GUID,Boolean>();
+        supportedInterfaces.put(iid,supported);
+        if(wrapper!=null) {
+            if(interfaces==null)
+                interfaces = new HashMap<Class<?>,Com4jObject>();
+            unwrap(wrapper).shared = true;
+            interfaces.put(comInterface,wrapper);
+        }
+    }
+
     /**
      * Returns whether this object was already disposed.
      * @return true if this object was disposed, false otherwise.
@@ -267,6 +510,26 @@ final class Wrapper implements InvocationHandler, Com4jObject {
     }
     
     public <T extends Com4jObject> T queryInterface( final Class<T> comInterface ) {
+        if(!CACHE_QUERY_INTERFACE)
+            return queryInterface0(comInterface);
+
+        GUID iid = COM4J.getIID(comInterface);
+        synchronized(this) {
+            if(interfaces!=null) {
+                Com4jObject r = interfaces.get(comInterface);
+                if(r!=null && !COM4J.unwrap(r).isDisposed())
+                    return comInterface.cast(r);
+            }
+            if(supportedInterfaces!=null && Boolean.FALSE.equals(supportedInterfaces.get(iid)))
+                return null;
+        }
+
+        T r = queryInterface0(comInterface);
+        cacheQueryInterface(iid,r!=null,comInterface,r);
+        return r;
+    }
+
+    private <T extends Com4jObject> T queryInterface0( final Class<T> comInterface ) {
         return new Task<T>() {
             public T call() {
                 GUID iid = COM4J.getIID(comInterface);
@@ -290,8 +553,8 @@ final class Wrapper implements InvocationHandler, Com4jObject {
                 proxy.nativeProxy = Native.advise(cp.getPointer(), proxy,iid.v[0], iid.v[1]);
 
                 // clean up resources to be nice
-                cpc.dispose();
-                cp.dispose();
+                disposeTemporary(cpc);
+                disposeTemporary(cp);
 
                 return proxy;
             }
@@ -0,0 +1,139 @@
+package com4j;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the Java objects that wrap the COM objects of one {@link ComThread},
+ * so that the same COM object comes back as the same Java object.
+ *
+ * <p>
+ * This is off by default. Set the system property {@code com4j.canonicalWrappers}
+ * to {@code true} to turn it on. When it's on, and a COM method returns an object that's
+ * already wrapped as the same Java interface, the new interface pointer is released right
+ * away and the existing wrapper is returned. This saves creating a wrapper and releasing the
+ * duplicate pointer later, for example when {@code workbook.getActiveSheet()} is called in a loop.
+ * Wrappers also learn their {@code IUnknown*} when they are created, so {@link Com4jObject#equals(Object)}
+ * and {@link Com4jObject#hashCode()} no longer need a round trip to the {@link ComThread}.
+ *
+ * <p>
+ * The price is that every wrapper that's created does a {@code QueryInterface} for {@code IUnknown}.
+ * Also, the code that gets the same object twice now shares one wrapper, so
+ * {@link Com4jObject#dispose() disposing} it affects both. A disposed wrapper is never handed
+ * out again; a new one is created instead.
+ *
+ * <p>
+ * Wrappers are only weakly referenced from this map.
+ */
+final class WrapperIdentityMap {
+    /**
+     * True if the canonicalization is turned on.
+     */
+    static final boolean ENABLED;
+
+    static {
+        boolean enabled = false;
+        try {
+            enabled = Boolean.getBoolean("com4j.canonicalWrappers");
+        } catch (SecurityException e) {
+            ;
+        }
+        ENABLED = enabled;
+    }
+
+    private final Map<Key,Entry> map = new HashMap<Key,Entry>();
+
+    /**
+     * Receives the entries whose wrappers are collected.
+     */
+    private final ReferenceQueue<Com4jObject> collected = new ReferenceQueue<Com4jObject>();
+
+    /**
+     * Returns the existing wrapper of the given COM object, or null.
+     * The caller needs to hold the lock of this object.
+     *
+     * @param iunknown
+     *      The {@code IUnknown*} of the COM object.
+     * @param type
+     *      The interface the wrapper implements. Null for the plain {@link Wrapper}.
+     */
+    Com4jObject get(long iunknown, Class<?> type) {
+        expunge();
+        Key key = new Key(iunknown,type);
+        Entry e = map.get(key);
+        if(e==null)     return null;
+
+        Com4jObject r = e.get();
+        if(r==null || COM4J.unwrap(r).isDisposed()) {
+            map.remove(key);
+            return null;
+        }
+        return r;
+    }
+
+    /**
+     * Registers a new wrapper.
+     * The caller needs to hold the lock of this object.
+     */
+    void put(long iunknown, Class<?> type, Com4jObject wrapper) {
+        Key key = new Key(iunknown,type);
+        map.put(key,new Entry(key,wrapper,collected));
+    }
+
+    /**
+     * Removes the entries of the collected wrappers.
+     */
+    private void expunge() {
+        Entry e;
+        while((e=(Entry)collected.poll())!=null) {
+            // the slot may have been taken over by a new wrapper already
+            if(map.get(e.key)==e)
+                map.remove(e.key);
+        }
+    }
+
+    /**
+     * Gets the map of the given thread.
+     *
+     * @return null if the thread doesn't support the canonicalization.
+     */
+    static WrapperIdentityMap of(ComThread thread) {
+        if(thread instanceof ComThreadMulti)
+            return ((ComThreadMulti)thread).identities;
+        if(thread instanceof ComThreadSingle)
+            return ((ComThreadSingle)thread).identities;
+        return null;
+    }
+
+    private static final class Key {
+        private final long iunknown;
+        private final Class<?> type;
+
+        Key(long iunknown, Class<?> type) {
+            this.iunknown = iunknown;
+            this.type = type;
+        }
+
+        public boolean equals(Object o) {
+            if(!(o instanceof Key))     return false;
+            Key that = (Key)o;
+            return this.iunknown==that.iunknown && this.type==that.type;
+        }
+
+        public int hashCode() {
+            int h = (int)(iunknown ^ (iunknown >>> 32));
+            return type==null ? h : h*31+type.hashCode();
+        }
+    }
+
+    private static final class Entry extends WeakReference<Com4jObject> {
+        private final Key key;
+
+        Entry(Key key, Com4jObject wrapper, ReferenceQueue<Com4jObject> q) {
+            super(wrapper,q);
+            this.key = key;
+        }
+    }
+}
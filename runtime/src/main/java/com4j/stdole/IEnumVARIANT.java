@@ -25,6 +25,19 @@ public interface IEnumVARIANT extends Com4jObject {
     java.lang.Object rgvar);
 
 
+  /**
+   * Fetches up to <tt>celt</tt> elements at once.
+   * @param celt Mandatory int parameter.
+   * @param rgvar Direct buffer that has room for <tt>celt</tt> VARIANTs.
+   * @return  Returns the number of elements fetched
+   */
+
+  @VTID(3)
+  int next(
+    int celt,
+    java.nio.Buffer rgvar);
+
+
   /**
    * @param celt Mandatory int parameter.
    */
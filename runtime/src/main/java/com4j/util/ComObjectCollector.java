@@ -1,10 +1,12 @@
 package com4j.util;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 
+import com4j.COM4J;
 import com4j.Com4jObject;
 import com4j.ComObjectListener;
 
@@ -94,14 +96,18 @@ public class ComObjectCollector implements ComObjectListener {
      *
      * <p>
      * Each time this method is called, it forgets all the disposed objects.
+     *
+     * @see COM4J#disposeAll(Iterable)
      */
     public void disposeAll() {
+        List<Com4jObject> live = new ArrayList<Com4jObject>(objects.size());
         for( WeakReference<Com4jObject> ref : objects) {
         	Com4jObject o = ref.get();
         	if(o != null) {
-        		o.dispose();
+        		live.add(o);
         	}
         }
         objects.clear();
+        COM4J.disposeAll(live);
     }
 }
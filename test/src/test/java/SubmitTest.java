@@ -0,0 +1,71 @@
+import com4j.COM4J;
+import com4j.ComException;
+import com4j_idl.ClassFactory;
+import com4j_idl.ITestObject;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Tests {@link COM4J#submit(com4j.Com4jObject, Callable)}
+ * and {@link COM4J#onComThread(com4j.Com4jObject, Callable)}.
+ */
+public class SubmitTest extends TestCase {
+    public void testPipelining() throws Exception {
+        final ITestObject t = ClassFactory.createTestObject();
+        List<Future<Long>> futures = new ArrayList<Future<Long>>();
+        for( int i=0; i<100; i++ ) {
+            final long magic = 0x100000000L+i;
+            futures.add(COM4J.submit(t, new Callable<Long>() {
+                public Long call() {
+                    return t.testInt64(magic);
+                }
+            }));
+        }
+        for( int i=0; i<futures.size(); i++ )
+            assertEquals(0x100000000L+i, (long)futures.get(i).get());
+    }
+
+    public void testOnComThread() throws Exception {
+        final ITestObject t = ClassFactory.createTestObject();
+        long sum = COM4J.onComThread(t, new Callable<Long>() {
+            public Long call() {
+                long r = 0;
+                for( int i=0; i<100; i++ )
+                    r += t.testInt64(0x100000000L+i);
+                return r;
+            }
+        });
+        assertEquals(100*0x100000000L+4950, sum);
+
+        try {
+            COM4J.onComThread(t, new Callable<Long>() {
+                public Long call() {
+                    return t.testInt64(1);
+                }
+            });
+            fail();
+        } catch (ComException e) {
+            assertEquals(0x80004005, e.getHRESULT());
+        }
+    }
+
+    public void testException() throws Exception {
+        final ITestObject t = ClassFactory.createTestObject();
+        Future<Long> f = COM4J.submit(t, new Callable<Long>() {
+            public Long call() {
+                return t.testInt64(1);
+            }
+        });
+        try {
+            f.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ComException);
+        }
+    }
+}
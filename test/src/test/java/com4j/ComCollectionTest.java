@@ -0,0 +1,141 @@
+package com4j;
+
+import com4j.stdole.IEnumVARIANT;
+import junit.framework.TestCase;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Tests how {@link ComCollection} fetches the elements.
+ */
+public class ComCollectionTest extends TestCase {
+    /**
+     * An enumerator that returns only one element per call, no matter how many are asked for.
+     */
+    public void testOneElementPerNext() {
+        ComCollection<Integer> c = new ComCollection<Integer>(Integer.class,enumerator(5));
+        List<Integer> r = new ArrayList<Integer>();
+        while(c.hasNext())
+            r.add(c.next());
+        assertEquals(5,r.size());
+        for( int i=0; i<5; i++ )
+            assertEquals(i,(int)r.get(i));
+    }
+
+    public void testEmpty() {
+        assertFalse(new ComCollection<Integer>(Integer.class,enumerator(0)).hasNext());
+        assertEquals(Collections.emptyList(),new ComCollection<Integer>(Integer.class,enumerator(0)).nextBatch());
+    }
+
+    /**
+     * The VT_I4 elements are converted to the element type of the iterator.
+     */
+    public void testConversion() {
+        ComCollection<Long> longs = new ComCollection<Long>(Long.class,enumerator(3,3));
+        assertEquals(Long.valueOf(0),longs.next());
+        assertEquals(Long.valueOf(1),longs.next());
+
+        ComCollection<Double> doubles = new ComCollection<Double>(Double.class,enumerator(3,3));
+        doubles.next();
+        assertEquals(Double.valueOf(1),doubles.next());
+
+        // driven by the VARTYPE
+        ComCollection<Object> objects = new ComCollection<Object>(Object.class,enumerator(3,3));
+        objects.next();
+        assertEquals(Integer.valueOf(1),objects.next());
+
+        ComCollection<Variant> variants = new ComCollection<Variant>(Variant.class,enumerator(3,3));
+        variants.next();
+        Variant v = variants.next();
+        assertEquals(Variant.Type.VT_I4,v.getType());
+        assertEquals(1,v.intValue());
+    }
+
+    /**
+     * {@link ComCollection#nextBatch()} hands out what's left of the current batch,
+     * and can be mixed with {@link ComCollection#next()}.
+     */
+    public void testNextBatch() {
+        int size = ComCollection.BATCH_SIZE*2+3;
+        ComCollection<Integer> c = new ComCollection<Integer>(Integer.class,enumerator(size,ComCollection.BATCH_SIZE));
+        List<Integer> r = new ArrayList<Integer>();
+        r.add(c.next());
+
+        List<Integer> batch = c.nextBatch();
+        assertEquals(ComCollection.BATCH_SIZE-1,batch.size());
+        r.addAll(batch);
+
+        while(!(batch=c.nextBatch()).isEmpty())
+            r.addAll(batch);
+        assertFalse(c.hasNext());
+
+        assertEquals(size,r.size());
+        for( int i=0; i<size; i++ )
+            assertEquals(i,(int)r.get(i));
+    }
+
+    private static IEnumVARIANT enumerator(int size) {
+        return enumerator(size,1);
+    }
+
+    /**
+     * Creates an enumerator of VT_I4 elements from 0 to size-1,
+     * which returns at most the given number of elements per call.
+     */
+    private static IEnumVARIANT enumerator(final int size, final int perCall) {
+        final ComThread thread = new InlineThread();
+        return (IEnumVARIANT)Proxy.newProxyInstance(IEnumVARIANT.class.getClassLoader(),
+            new Class<?>[]{IEnumVARIANT.class}, new InvocationHandler() {
+                int next;
+                public Object invoke(Object proxy, Method m, Object[] args) {
+                    if(m.getName().equals("getComThread"))
+                        return thread;
+                    if(m.getName().equals("next")) {
+                        int celt = (Integer)args[0];
+                        ByteBuffer buf = (ByteBuffer)args[1];
+                        int stride = buf.capacity()/celt;
+                        int n = Math.min(Math.min(celt,perCall),size-next);
+                        for( int i=0; i<n; i++ ) {
+                            buf.putShort(i*stride,(short)VariantConverter.VT_I4);
+                            buf.putInt(i*stride+8,next++);
+                        }
+                        return n;
+                    }
+                    return null;    // dispose
+                }
+            });
+    }
+
+    /**
+     * Runs the tasks on the calling thread.
+     */
+    private static final class InlineThread implements ComThread {
+        public <T> T execute(Task<T> task) {
+            return task.call();
+        }
+        public <T> Future<T> submit(Callable<T> task) {
+            throw new UnsupportedOperationException();
+        }
+        public boolean isCurrentThread() {
+            return true;
+        }
+        public ReferenceQueue<Wrapper> getCollectableObjects() {
+            return null;
+        }
+        public void addLiveObject(Com4jObject r) {
+        }
+        public void addListener(ComObjectListener listener) {
+        }
+        public void removeListener(ComObjectListener listener) {
+        }
+    }
+}
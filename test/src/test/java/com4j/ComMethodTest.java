@@ -0,0 +1,136 @@
+package com4j;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Tests how {@link ComMethod} expands the arguments of the
+ * {@link UseDefaultValues} overloads.
+ */
+public class ComMethodTest extends TestCase {
+    interface ITest extends Com4jObject {
+        @VTID(7)
+        @ReturnValue(index=4)
+        Object testFunction(Object notOptional, Object opt1, Object opt2, int localeID);
+
+        @VTID(7)
+        @UseDefaultValues(paramIndexMapping = {0, 1, 3}, optParamIndex = {2}, javaType = {int.class},
+            nativeType = {NativeType.Int32}, variantType = {Variant.Type.NO_TYPE}, literal = {"42"})
+        @ReturnValue(index=4)
+        Object testFunction(Object notOptional, Object opt1, int localeID);
+
+        @VTID(7)
+        @UseDefaultValues(paramIndexMapping = {0, 3}, optParamIndex = {1, 2}, javaType = {String.class, int.class},
+            nativeType = {NativeType.BSTR, NativeType.Int32}, variantType = {Variant.Type.NO_TYPE, Variant.Type.NO_TYPE}, literal = {"forty-two", "42"})
+        @ReturnValue(index=4)
+        Object testFunction(Object notOptional, int localeID);
+
+        @VTID(8)
+        void convert(int i, String s, Holder<Integer> h, GUID g);
+
+        @VTID(9)
+        void scalars(boolean b, float f, double d, long l);
+
+        @VTID(10)
+        ITest child();
+
+        @VTID(11)
+        java.util.Iterator<Object> items();
+
+        @VTID(12)
+        void array(Holder<SafeArray> a);
+    }
+
+    public void testNoDefaults() throws Exception {
+        ComMethod m = new StandardComMethod(ITest.class.getMethod("testFunction",Object.class,Object.class,Object.class,int.class));
+        Object[] args = {"a","b","c",1};
+        assertSame(args, m.fillDefaultParameters(args));
+    }
+
+    public void testDefaults() throws Exception {
+        ComMethod m = new StandardComMethod(ITest.class.getMethod("testFunction",Object.class,Object.class,int.class));
+        assertEquals(Arrays.asList("a","b",42,1), Arrays.asList(m.fillDefaultParameters(new Object[]{"a","b",1})));
+
+        m = new StandardComMethod(ITest.class.getMethod("testFunction",Object.class,int.class));
+        assertEquals(Arrays.asList("a","forty-two",42,1), Arrays.asList(m.fillDefaultParameters(new Object[]{"a",1})));
+    }
+
+    public void testConverters() throws Exception {
+        ComMethod m = new StandardComMethod(ITest.class.getMethod("convert",int.class,String.class,Holder.class,GUID.class));
+        // int and String are passed as is
+        assertEquals(2, m.toNativeConverters.length);
+        assertEquals(2, m.toNativeConverters[0].index);
+        assertEquals(3, m.toNativeConverters[1].index);
+        assertEquals(1, m.toJavaConverters.length);
+        assertEquals(2, m.toJavaConverters[0].index);
+
+        GUID g = new GUID("{00000000-0000-0000-C000-000000000046}");
+        Holder<Integer> h = new Holder<Integer>(5);
+        Object[] args = {1,"s",h,g};
+        m.messageParameters(args);
+        assertSame(h, args[2]);
+        assertEquals(5, (int)h.value);
+        assertSame(g.v, args[3]);
+    }
+
+    public void testFrameBits() throws Exception {
+        StandardComMethod m = new StandardComMethod(ITest.class.getMethod("scalars",boolean.class,float.class,double.class,long.class));
+        assertEquals(1, m.toBits(0,true));
+        assertEquals(Float.floatToRawIntBits(1.5f), m.toBits(1,1.5f));
+        assertEquals(Double.doubleToRawLongBits(2.5), m.toBits(2,2.5));
+        // a number from a custom converter is widened
+        assertEquals(Double.doubleToRawLongBits(3.0), m.toBits(2,3));
+        assertEquals(-1L, m.toBits(3,-1L));
+        try {
+            m.toBits(1,"1.5");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            m.toBits(0,null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testNullInterfaceReturn() throws Exception {
+        StandardComMethod m = new StandardComMethod(ITest.class.getMethod("child"));
+        assertNull(m.fromBits(0));
+
+        m = new StandardComMethod(ITest.class.getMethod("items"));
+        assertNull(m.fromBits(0));
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testSafeArrayHolder() throws Exception {
+        ComMethod m = new StandardComMethod(ITest.class.getMethod("array",Holder.class));
+        SafeArray in = new SafeArray(1234L);
+        Holder<SafeArray> h = new Holder<SafeArray>(in);
+        Object[] args = {h};
+        m.messageParameters(args);
+        assertEquals(1234L, ((Holder)args[0]).value);
+        try {
+            in.getBounds();     // handed over to the callee
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // the callee replaced it
+        ((Holder)args[0]).value = 5678L;
+        ParameterConverter.convert(m.toJavaConverters,args);
+        SafeArray out = h.value;
+        assertEquals(5678L, out.getPointer());
+        out.detach();   // not a real SAFEARRAY
+
+        // the callee destroyed it
+        h.value = null;
+        m.messageParameters(args);
+        assertEquals(0L, ((Holder)args[0]).value);
+        ParameterConverter.convert(m.toJavaConverters,args);
+        assertNull(h.value);
+    }
+}
@@ -0,0 +1,78 @@
+package com4j;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Tests the bookkeeping of {@link ComScope}.
+ */
+public class ComScopeTest extends TestCase {
+    public void testNesting() {
+        assertNull(ComScope.current());
+        ComScope outer = ComScope.open();
+        ComScope inner = ComScope.open();
+        assertSame(inner,ComScope.current());
+        inner.close();
+        assertTrue(inner.isClosed());
+        assertSame(outer,ComScope.current());
+        outer.close();
+        assertNull(ComScope.current());
+    }
+
+    public void testOutOfOrderClose() {
+        ComScope outer = ComScope.open();
+        ComScope inner = ComScope.open();
+        outer.close();
+        assertSame(inner,ComScope.current());
+        inner.close();
+        assertNull(ComScope.current());
+    }
+
+    public void testDetach() {
+        ComScope s = ComScope.open();
+        try {
+            Object o = new Object();
+            ComScope.track(o);
+            assertEquals(1,s.size());
+            assertTrue(s.detach(o));
+            assertFalse(s.detach(o));
+            assertEquals(0,s.size());
+        } finally {
+            s.close();
+        }
+    }
+
+    /**
+     * A {@link Variant} is cleared on the {@link ComThread} it was created on.
+     */
+    public void testVariantThread() throws Exception {
+        final Variant[] theirs = new Variant[1];
+        Thread other = new Thread() {
+            public void run() {
+                ComThread old = Task.setComThread(ComThreadSingle.get());
+                try {
+                    theirs[0] = new Variant();
+                    theirs[0].set(42);
+                } finally {
+                    Task.setComThread(old);
+                }
+            }
+        };
+        other.start();
+        other.join();
+
+        try {
+            ComScope.releaseAll(Arrays.asList(theirs[0]));
+            fail();
+        } catch (RuntimeException e) {
+            // ComThreadSingle refuses to run tasks from the wrong thread
+        }
+        assertEquals(42,theirs[0].intValue());
+
+        Variant mine = new Variant();
+        mine.set(7);
+        assertEquals(1,ComScope.releaseAll(Arrays.asList(mine)));
+        assertEquals(Variant.Type.VT_EMPTY,mine.getType());
+    }
+}
@@ -0,0 +1,59 @@
+package com4j;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests {@link COM4J#disposeAll(Iterable)}, through {@link ComScope#disposeAll(Iterable)}
+ * so that the native library isn't needed.
+ */
+public class DisposeAllTest extends TestCase {
+    public void testCount() {
+        ComThread t = ComThreadSingle.get();
+        Wrapper a = new Wrapper(0,t,null);
+        Wrapper b = new Wrapper(0,t,null);
+        Wrapper c = new Wrapper(0,t,null);
+        c.dispose();
+
+        List<Wrapper> objects = Arrays.asList(a,null,b,c,a);
+        assertEquals(2,ComScope.disposeAll(objects));
+        assertTrue(a.isDisposed());
+        assertTrue(b.isDisposed());
+        assertEquals(0,ComScope.disposeAll(objects));
+    }
+
+    /**
+     * The objects of another thread fail to be disposed from here,
+     * which must not keep those of this thread from being disposed.
+     */
+    public void testFailingGroup() throws Exception {
+        final List<Wrapper> others = new ArrayList<Wrapper>();
+        Thread other = new Thread() {
+            public void run() {
+                others.add(new Wrapper(0,ComThreadSingle.get(),null));
+            }
+        };
+        other.start();
+        other.join();
+
+        ComThread t = ComThreadSingle.get();
+        List<Wrapper> objects = new ArrayList<Wrapper>();
+        objects.add(others.get(0));
+        for( int i=0; i<3; i++ )
+            objects.add(new Wrapper(0,t,null));
+        objects.add(others.get(0));
+
+        try {
+            ComScope.disposeAll(objects);
+            fail();
+        } catch (RuntimeException e) {
+            // ComThreadSingle refuses to run tasks from the wrong thread
+        }
+        assertFalse(others.get(0).isDisposed());
+        for( int i=1; i<4; i++ )
+            assertTrue(objects.get(i).isDisposed());
+    }
+}
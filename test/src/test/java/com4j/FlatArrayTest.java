@@ -0,0 +1,31 @@
+package com4j;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the indexing of {@link FlatArray}.
+ */
+public class FlatArrayTest extends TestCase {
+    public void testOffset() {
+        FlatArray a = new FlatArray(new double[]{0,1,2,3,4,5},2,3);
+        assertEquals(0,a.offset(0,0));
+        assertEquals(2,a.offset(0,2));
+        assertEquals(3,a.offset(1,0));
+        assertEquals(5.0,a.get(1,2));
+    }
+
+    public void testShape() {
+        try {
+            new FlatArray(new int[5],2,3);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new FlatArray(new int[6],2,3).offset(2,0);
+            fail();
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com4j;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Tests that {@link COM4J#onComThread(Com4jObject, Callable)} reports failures the same way
+ * whether the task hops to the {@link ComThread} or the caller already is that thread.
+ * Goes through {@link Task#callIn(ComThread, Callable)} so that the native library isn't needed.
+ */
+public class OnComThreadTest extends TestCase {
+    private QueueThread thread;
+
+    protected void setUp() {
+        thread = new QueueThread();
+        thread.start();
+    }
+
+    protected void tearDown() {
+        thread.interrupt();
+    }
+
+    public void testResult() {
+        assertEquals("x",fromOtherThread(new Callable<String>() {
+            public String call() {
+                return "x";
+            }
+        }));
+        assertEquals("x",inline(new Callable<String>() {
+            public String call() {
+                return "x";
+            }
+        }));
+    }
+
+    public void testComException() {
+        Throwable e = failure(new ComException("failed",0x80004005));
+        assertSame(ComException.class,e.getClass());
+        assertEquals(0x80004005,((ComException)e).getHRESULT());
+    }
+
+    public void testRuntimeException() {
+        IllegalArgumentException x = new IllegalArgumentException();
+        Throwable e = failure(x);
+        assertSame(ExecutionException.class,e.getClass());
+        assertSame(x,e.getCause());
+    }
+
+    public void testCheckedException() {
+        IOException x = new IOException();
+        Throwable e = failure(x);
+        assertSame(ExecutionException.class,e.getClass());
+        assertSame(x,e.getCause());
+    }
+
+    public void testExecutionException() {
+        ExecutionException x = new ExecutionException(new IllegalStateException());
+        assertSame(x,failure(x));
+    }
+
+    public void testError() {
+        AssertionError x = new AssertionError();
+        assertSame(x,failure(x));
+    }
+
+    /**
+     * Runs a task that throws {@code x} both ways, and checks that the outcome
+     * is the same. Returns what was thrown.
+     */
+    private Throwable failure(final Throwable x) {
+        Callable<Void> task = new Callable<Void>() {
+            public Void call() throws Exception {
+                if(x instanceof Exception)
+                    throw (Exception)x;
+                throw (Error)x;
+            }
+        };
+
+        Throwable cross = null;
+        try {
+            fromOtherThread(task);
+        } catch (Throwable e) {
+            cross = e;
+        }
+
+        Throwable local = null;
+        try {
+            inline(task);
+        } catch (Throwable e) {
+            local = e;
+        }
+
+        assertNotNull(cross);
+        assertNotNull(local);
+        assertSame(cross.getClass(),local.getClass());
+        assertSame(cross.getCause(),local.getCause());
+        return local;
+    }
+
+    private <T> T fromOtherThread(Callable<T> task) {
+        return Task.callIn(thread,task);
+    }
+
+    /**
+     * Calls {@link Task#callIn(ComThread, Callable)} from the {@link ComThread} itself,
+     * and passes back whatever it returns or throws.
+     */
+    private <T> T inline(final Callable<T> task) {
+        final Object[] outcome = new Object[2];
+        new Task<Void>() {
+            public Void call() {
+                assertTrue(thread.isCurrentThread());
+                try {
+                    outcome[0] = Task.callIn(thread,task);
+                } catch (Throwable e) {
+                    outcome[1] = e;
+                }
+                return null;
+            }
+        }.execute(thread);
+
+        if(outcome[1] instanceof RuntimeException)
+            throw (RuntimeException)outcome[1];
+        if(outcome[1] instanceof Error)
+            throw (Error)outcome[1];
+        return (T)outcome[0];
+    }
+
+    /**
+     * Runs the tasks in its own thread, like {@link ComThreadMulti}.
+     */
+    private static final class QueueThread extends Thread implements ComThread {
+        private final BlockingQueue<Task<?>> tasks = new LinkedBlockingQueue<Task<?>>();
+
+        QueueThread() {
+            setDaemon(true);
+        }
+
+        public void run() {
+            try {
+                while(true)
+                    tasks.take().invoke();
+            } catch (InterruptedException e) {
+                // done
+            }
+        }
+
+        public <T> T execute(Task<T> task) {
+            synchronized(task) {
+                task.reset();
+                tasks.add(task);
+                try {
+                    while(!task.isDone())
+                        task.wait();
+                } catch (InterruptedException e) {
+                    throw new ExecutionException(e);
+                }
+                if(task.exception!=null)
+                    throw new ExecutionException(task.exception);
+                return task.result;
+            }
+        }
+
+        public <T> Future<T> submit(Callable<T> task) {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean isCurrentThread() {
+            return Thread.currentThread()==this;
+        }
+
+        public ReferenceQueue<Wrapper> getCollectableObjects() {
+            return null;
+        }
+
+        public void addLiveObject(Com4jObject r) {
+        }
+
+        public void addListener(ComObjectListener listener) {
+        }
+
+        public void removeListener(ComObjectListener listener) {
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com4j;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests how {@link ReleaseQueue} batches the releases.
+ */
+public class ReleaseQueueTest extends TestCase {
+    private int signals;
+
+    private final ReleaseQueue q = new ReleaseQueue() {
+        void signal() {
+            signals++;
+        }
+    };
+
+    public void testBatch() {
+        NativePointerPhantomReference a = new NativePointerPhantomReference(null,q,0);
+        NativePointerPhantomReference b = new NativePointerPhantomReference(null,q,0);
+        q.add(a);
+        q.add(b);
+        assertEquals(2,q.size());
+
+        q.enqueue(a);
+        q.enqueue(b);
+        assertEquals(1,signals);    // only the first one wakes up the thread
+
+        assertTrue(q.release());
+        assertEquals(0,q.size());
+        assertFalse(q.release());
+
+        q.enqueue(a);   // already removed
+        assertEquals(2,signals);
+        assertTrue(q.release());
+        assertEquals(0,q.size());
+    }
+
+    public void testReleaseAllOfRequester() {
+        Thread other = new Thread();
+        NativePointerPhantomReference a = new NativePointerPhantomReference(null,q,0);
+        NativePointerPhantomReference b = new NativePointerPhantomReference(null,q,0);
+        NativePointerPhantomReference c = new NativePointerPhantomReference(null,q,0);
+        a.requester = Thread.currentThread();
+        b.requester = other;
+        c.requester = Thread.currentThread();
+        q.add(a);
+        q.add(b);
+        q.add(c);
+
+        q.releaseAll(Thread.currentThread());
+        assertEquals(1,q.size());
+        q.releaseAll(other);
+        assertEquals(0,q.size());
+    }
+}
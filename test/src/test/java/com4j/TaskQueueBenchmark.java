@@ -0,0 +1,116 @@
+package com4j;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares {@link TaskQueue} with the synchronized {@link LinkedList} that
+ * {@link ComThreadMulti} used to queue its tasks in, with many producers and one consumer.
+ *
+ * <p>
+ * This isn't a unit test, and isn't run by the build. Run it by hand:
+ *
+ * <pre>
+ * java com4j.TaskQueueBenchmark [producers] [tasks per producer] [rounds]
+ * </pre>
+ */
+public class TaskQueueBenchmark {
+    public static void main(String[] args) throws Exception {
+        int producers = args.length>0 ? Integer.parseInt(args[0]) : 50;
+        int tasks = args.length>1 ? Integer.parseInt(args[1]) : 20000;
+        int rounds = args.length>2 ? Integer.parseInt(args[2]) : 5;
+
+        System.out.printf("%d producers, %d tasks each%n", producers, tasks);
+        for( int r=0; r<rounds; r++ ) {
+            // the first rounds warm up the JIT
+            long list = run(new ListQueue(), producers, tasks);
+            long queue = run(new LockFreeQueue(), producers, tasks);
+            System.out.printf("round %d: synchronized list %d ms, TaskQueue %d ms%n",
+                r, list/1000000, queue/1000000);
+        }
+    }
+
+    /**
+     * Pushes the tasks from the producers, and takes them off in the current thread.
+     *
+     * @return
+     *      How long it took in nanoseconds.
+     */
+    private static long run(final Queue q, int producers, final int tasks) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for( int p=0; p<producers; p++ ) {
+            threads[p] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for( int i=0; i<tasks; i++ )
+                        q.push(new NopTask());
+                }
+            };
+            threads[p].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        int total = producers*tasks;
+        for( int received=0; received<total; ) {
+            if(q.poll()==null)
+                Thread.yield();
+            else
+                received++;
+        }
+        long time = System.nanoTime()-begin;
+
+        for (Thread t : threads)
+            t.join();
+        return time;
+    }
+
+    private interface Queue {
+        void push(Task<?> t);
+        Task<?> poll();
+    }
+
+    /**
+     * The queue as {@link ComThreadMulti} used it before {@link TaskQueue}.
+     */
+    private static final class ListQueue implements Queue {
+        private final List<Task<?>> taskList = Collections.synchronizedList(new LinkedList<Task<?>>());
+
+        public void push(Task<?> t) {
+            taskList.add(t);
+        }
+
+        public Task<?> poll() {
+            if(taskList.isEmpty())
+                return null;
+            Task<?> t = taskList.get(0);
+            taskList.remove(0);
+            return t;
+        }
+    }
+
+    private static final class LockFreeQueue implements Queue {
+        private final TaskQueue q = new TaskQueue();
+
+        public void push(Task<?> t) {
+            q.push(t);
+        }
+
+        public Task<?> poll() {
+            return q.poll();
+        }
+    }
+
+    private static final class NopTask extends Task<Void> {
+        public Void call() {
+            return null;
+        }
+    }
+}
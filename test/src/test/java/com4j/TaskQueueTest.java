@@ -0,0 +1,107 @@
+package com4j;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests {@link TaskQueue}.
+ */
+public class TaskQueueTest extends TestCase {
+    private static final int PRODUCERS = 50;
+    private static final int TASKS_PER_PRODUCER = 20000;
+
+    public void testEmpty() {
+        TaskQueue q = new TaskQueue();
+        assertTrue(q.isEmpty());
+        assertNull(q.poll());
+    }
+
+    public void testFifo() {
+        TaskQueue q = new TaskQueue();
+        NumberedTask[] tasks = new NumberedTask[10];
+        for( int i=0; i<tasks.length; i++ ) {
+            tasks[i] = new NumberedTask(0,i);
+            q.push(tasks[i]);
+        }
+        assertFalse(q.isEmpty());
+        for (NumberedTask t : tasks)
+            assertSame(t, q.poll());
+        assertNull(q.poll());
+        assertTrue(q.isEmpty());
+
+        // tasks are reused by the callers, so make sure they can go back in
+        q.push(tasks[3]);
+        assertSame(tasks[3], q.poll());
+        assertNull(q.poll());
+    }
+
+    public void testDrain() {
+        TaskQueue q = new TaskQueue();
+        for( int i=0; i<5; i++ )
+            q.push(new NumberedTask(0,i));
+        Task<?>[] batch = new Task<?>[3];
+        assertEquals(3, q.drain(batch,batch.length));
+        assertEquals(0, ((NumberedTask)batch[0]).seq);
+        assertEquals(2, q.drain(batch,batch.length));
+        assertEquals(4, ((NumberedTask)batch[1]).seq);
+        assertEquals(0, q.drain(batch,batch.length));
+    }
+
+    /**
+     * Many producers, one consumer. Every task has to arrive exactly once
+     * and in the order each producer pushed them.
+     */
+    public void testContention() throws Exception {
+        final TaskQueue q = new TaskQueue();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] producers = new Thread[PRODUCERS];
+        for( int p=0; p<PRODUCERS; p++ ) {
+            final int id = p;
+            producers[p] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for( int i=0; i<TASKS_PER_PRODUCER; i++ )
+                        q.push(new NumberedTask(id,i));
+                }
+            };
+            producers[p].start();
+        }
+
+        int[] expected = new int[PRODUCERS];
+        int total = PRODUCERS*TASKS_PER_PRODUCER;
+        start.countDown();
+        for( int received=0; received<total; ) {
+            NumberedTask t = (NumberedTask)q.poll();
+            if(t==null) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(expected[t.producer]++, t.seq);
+            received++;
+        }
+
+        for (Thread t : producers)
+            t.join();
+        assertNull(q.poll());
+        assertTrue(q.isEmpty());
+    }
+
+    private static final class NumberedTask extends Task<Void> {
+        final int producer;
+        final int seq;
+
+        NumberedTask(int producer, int seq) {
+            this.producer = producer;
+            this.seq = seq;
+        }
+
+        public Void call() {
+            return null;
+        }
+    }
+}
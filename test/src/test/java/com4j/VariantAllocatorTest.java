@@ -0,0 +1,69 @@
+package com4j;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests how {@link VariantAllocator} reuses the memory of {@link Variant}s.
+ */
+public class VariantAllocatorTest extends TestCase {
+    public void testReuse() {
+        Variant v = new Variant();
+        v.image.putInt(8,42);
+        VariantAllocator.free(v.slot);
+        VariantAllocator.free(v.slot);  // no-op
+
+        Variant w = new Variant();
+        assertSame(v.image,w.image);
+        assertEquals(0,w.image.getInt(8));
+        assertEquals(Variant.Type.VT_EMPTY,w.getType());
+    }
+
+    public void testSlab() {
+        Variant a = new Variant();
+        Variant b = new Variant();
+        assertNotSame(a.image,b.image);
+        assertTrue(a.image.isDirect());
+        a.image.putLong(8,-1);
+        assertEquals(0,b.image.getLong(8));
+    }
+
+    /**
+     * A garbage collected {@link Variant} that may hold an interface pointer is handed to
+     * its {@link ComThread} to be cleared, rather than cleared by whichever thread finds it.
+     */
+    public void testHandOff() throws Exception {
+        ComThreadSingle owner = ComThreadSingle.get();
+        ComThread old = Task.setComThread(owner);
+        try {
+            Variant v = new Variant(true);
+            assertSame(owner,v.slot.thread);
+            v.image.putShort(0,(short)Variant.Type.VT_BSTR.comEnumValue());
+        } finally {
+            Task.setComThread(old);
+        }
+
+        final Throwable[] failure = new Throwable[1];
+        for( int i=0; i<50; i++ ) {
+            System.gc();
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        VariantAllocator.collectGarbage();
+                    } catch (Throwable e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+            t.start();
+            t.join();
+            assertNull(failure[0]);
+
+            try {
+                owner.liveComObjects.release();
+            } catch (UnsatisfiedLinkError e) {
+                return; // VariantClear was called on the owner, which is all we can check without the DLL
+            }
+        }
+        fail("the Variant was never handed to its ComThread");
+    }
+}
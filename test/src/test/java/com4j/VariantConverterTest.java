@@ -0,0 +1,57 @@
+package com4j;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static com4j.VariantConverter.*;
+
+/**
+ * Tests the scalar conversions that {@link VariantConverter} does without the native code.
+ */
+public class VariantConverterTest extends TestCase {
+    private final ByteBuffer image = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+
+    public void testRounding() {
+        setFloating(image,VT_R8,2.5);
+        assertTrue(changeType(image,VT_I4));
+        assertEquals(VT_I4,getVarType(image));
+        assertEquals(2,image.getInt(8));
+
+        setFloating(image,VT_R8,-3.5);
+        changeType(image,VT_I2);
+        assertEquals(-4,image.getShort(8));
+
+        // CY is scaled by 10,000
+        image.putLong(0,VT_CY);
+        image.putLong(8,15000);
+        changeType(image,VT_I4);
+        assertEquals(2,image.getInt(8));
+    }
+
+    public void testBoolean() {
+        setIntegral(image,VT_I4,5);
+        changeType(image,VT_BOOL);
+        assertEquals(-1,image.getShort(8));
+        changeType(image,VT_I4);
+        assertEquals(-1,image.getInt(8));
+    }
+
+    public void testOverflow() {
+        setIntegral(image,VT_I4,200);
+        try {
+            changeType(image,VT_I1);
+            fail();
+        } catch (ComException e) {
+            // expected
+        }
+        assertEquals(VT_I4,getVarType(image));
+    }
+
+    public void testNative() {
+        image.putLong(0,8);    // VT_BSTR
+        assertFalse(changeType(image,VT_I4));
+        assertEquals(8,getVarType(image));
+    }
+}
@@ -0,0 +1,34 @@
+package com4j;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link WeakClassMap}.
+ */
+public class WeakClassMapTest extends TestCase {
+    public void testPutIfAbsent() {
+        WeakClassMap<String> m = new WeakClassMap<String>();
+        assertNull(m.get(String.class));
+        assertEquals("a",m.putIfAbsent(String.class,"a"));
+        assertEquals("a",m.putIfAbsent(String.class,"b"));
+        assertEquals("a",m.get(String.class));
+        assertNull(m.get(Integer.class));
+        assertEquals(1,m.size());
+    }
+
+    /**
+     * A value in use is never replaced, whatever the garbage collector does.
+     */
+    public void testValueInUse() {
+        WeakClassMap<Object> m = new WeakClassMap<Object>();
+        Object v = new Object();
+        assertSame(v,m.putIfAbsent(String.class,v));
+        System.gc();
+        assertSame(v,m.get(String.class));
+        assertSame(v,m.putIfAbsent(String.class,new Object()));
+    }
+
+    public void testComMethodTable() {
+        assertSame(ComMethodTable.get(Runnable.class),ComMethodTable.get(Runnable.class));
+    }
+}
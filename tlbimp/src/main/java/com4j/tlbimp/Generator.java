@@ -87,6 +87,12 @@ public final class Generator {
      */
     Integer defaultLcid = null;
 
+    /**
+     * If true, also generate a stub class for each custom interface,
+     * which the runtime uses in place of a {@link java.lang.reflect.Proxy}.
+     */
+    boolean generateStubs = false;
+
     public Generator( CodeWriter writer, ReferenceResolver resolver, ErrorListener el, Locale locale ) {
         this.el = el;
         this.writer = writer;
@@ -110,6 +116,10 @@ public final class Generator {
         this.defaultLcid = lcid;
     }
 
+    public void setGenerateStubs(boolean v) {
+        this.generateStubs = v;
+    }
+
     /**
      * Call this method repeatedly to generate classes from each type library.
      */
@@ -497,7 +507,7 @@ public final class Generator {
                     generate( t.queryInterface(IDispInterfaceDecl.class) );
                     break;
                 case INTERFACE:
-                    new CustomInterfaceGenerator(this,t.queryInterface(IInterfaceDecl.class)).generate();
+                    generate( t.queryInterface(IInterfaceDecl.class) );
                     break;
                 case ENUM:
                     generate( t.queryInterface(IEnumDecl.class) );
@@ -603,12 +613,18 @@ public final class Generator {
             if(eventInterfaces.contains(t))
                 return; // avoid generating the same interface twice, once as event, once as normal
             if(t.isDual()) {
-                new CustomInterfaceGenerator(this,t.getVtblInterface()).generate();
+                generate( t.getVtblInterface() );
             } else {
                 new DispInterfaceGenerator(this,t).generate();
             }
         }
 
+        private void generate( IInterfaceDecl t ) throws IOException {
+            new CustomInterfaceGenerator(this,t).generate();
+            if(generateStubs)
+                new StubGenerator(this,t).generate();
+        }
+
         /**
          * Generates the event sink interfaces from this object.
          */
@@ -689,7 +705,7 @@ public final class Generator {
      * Gets or creates a {@link LibBinder} object for the given
      * type library.
      */
-    private LibBinder getTypeLibInfo(IWTypeLib p) throws BindingException {
+    /*package*/ LibBinder getTypeLibInfo(IWTypeLib p) throws BindingException {
         LibBinder tli = typeLibs.get(p);
         if(tli==null) {
             typeLibs.put(p,tli=new LibBinder(p));
@@ -1,7 +1,9 @@
 package com4j.tlbimp;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import com4j.ReturnValue;
 import com4j.tlbimp.Generator.LibBinder;
@@ -11,6 +13,7 @@ import com4j.tlbimp.def.IInterfaceDecl;
 import com4j.tlbimp.def.IMethod;
 import com4j.tlbimp.def.IPtrType;
 import com4j.tlbimp.def.IType;
+import com4j.tlbimp.def.InvokeKind;
 
 /**
  * Common code for generating interfaces that user application calls.
@@ -73,6 +76,38 @@ abstract class InvocableInterfaceGenerator<T extends IInterface> extends Interfa
         o.endCommaMode();
     }
 
+    /**
+     * Generates the implementations of the methods of this interface into a stub class.
+     *
+     * <p>
+     * This mirrors {@link #generate()}, and methods that failed to bind there
+     * are silently skipped, as the error is already reported.
+     */
+    final void implementMethods(IndentingWriter o, StubGenerator stub) {
+        Set<String> putMethods = new HashSet<String>();
+
+        for( int j=0; j<t.countMethods(); j++ ) {
+            IMethod m = t.getMethod(j);
+            InvokeKind kind = m.getKind();
+            if(kind== InvokeKind.PROPERTYPUT || kind== InvokeKind.PROPERTYPUTREF) {
+                if(!putMethods.add(m.getName()))
+                    continue;   // already added
+            }
+            try {
+                o.startBuffering();
+                MethodBinderImpl mb = createMethodBinder(m);
+                if(mb!=null) {
+                    mb.implement(o,stub);
+                    mb.implementDefaultInterfaceFacade(o,stub);
+                }
+                o.commit();
+            } catch( BindingException e ) {
+                o.cancel();
+            }
+            m.dispose();
+        }
+    }
+
     /**
      * Returns a {@link MethodBinderImpl} that generates a method definition.
      *
@@ -100,8 +135,42 @@ abstract class InvocableInterfaceGenerator<T extends IInterface> extends Interfa
          * if applicable, or otherwise no-op.
          */
         final void generateDefaultInterfaceFacade( IndentingWriter o ) throws BindingException {
-            IMethod m = method;
             List<IType> intermediates = new ArrayList<IType>();
+            MethodBinderImpl mb = findDefaultInterfaceFacade(intermediates);
+            if(mb==null)
+                return;
+
+            o.printf("@VTID(%1d)",
+                method.getVtableIndex());
+            o.println();
+
+            mb.declareReturnType(o,intermediates,false);
+            this.declareMethodName(o);
+            mb.declareParameters(o, null);
+            o.println();
+        }
+
+        /**
+         * Implements the method generated by {@link #generateDefaultInterfaceFacade(IndentingWriter)}
+         * in a stub class, if any.
+         */
+        final void implementDefaultInterfaceFacade( IndentingWriter o, StubGenerator stub ) throws BindingException {
+            MethodBinderImpl mb = findDefaultInterfaceFacade(new ArrayList<IType>());
+            if(mb!=null)
+                mb.implement(o, stub, getMethodName(), null);
+        }
+
+        /**
+         * Determines if this method needs a {@link ReturnValue#defaultPropertyThrough()} facade.
+         *
+         * @param intermediates
+         *      receives the types that the facade goes through.
+         * @return
+         *      the binder of the default method at the end of the chain,
+         *      which provides the signature of the facade. null if no facade is needed.
+         */
+        private MethodBinderImpl findDefaultInterfaceFacade( List<IType> intermediates ) throws BindingException {
+            IMethod m = method;
 
             while(true) {
                 MethodBinderImpl mb = createMethodBinder(m);
@@ -136,7 +205,7 @@ abstract class InvocableInterfaceGenerator<T extends IInterface> extends Interfa
                 // does this target interface has a default method?
                 IMethod dm = g.dmf.getDefaultMethod(intf);
                 if (dm == null)
-                    return;
+                    return null;
 
                 // recursively check...
                 m = dm;
@@ -144,25 +213,17 @@ abstract class InvocableInterfaceGenerator<T extends IInterface> extends Interfa
             }
 
             if(intermediates.isEmpty())
-                return; // no default method to generate
+                return null; // no default method to generate
 
             if(m.getParamCount()<2)
-                return; // the default method has to have at least one in param and one ret val
+                return null; // the default method has to have at least one in param and one ret val
 
+            MethodBinderImpl mb = createMethodBinder(m);
             // TODO: check if this is correct.
-            if(createMethodBinder(m).retParam < 0){
-              return; // there is no return value.. This would cause a NullPointerException
+            if(mb.retParam < 0){
+              return null; // there is no return value.. This would cause a NullPointerException
             }
-
-            o.printf("@VTID(%1d)",
-                method.getVtableIndex());
-            o.println();
-
-            MethodBinderImpl mb = createMethodBinder(m);
-            mb.declareReturnType(o,intermediates,false);
-            this.declareMethodName(o);
-            mb.declareParameters(o, null);
-            o.println();
+            return mb;
         }
     }
 }
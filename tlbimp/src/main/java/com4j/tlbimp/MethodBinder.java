@@ -1,6 +1,7 @@
 package com4j.tlbimp;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -105,6 +106,18 @@ abstract class MethodBinder
   }
 
     public void declare(IndentingWriter o) throws BindingException {
+        generate(o, null);
+    }
+
+    /**
+     * Generates the implementations of the methods that {@link #declare(IndentingWriter)} declares,
+     * into a stub class.
+     */
+    final void implement(IndentingWriter o, StubGenerator stub) throws BindingException {
+        generate(o, stub);
+    }
+
+    private void generate(IndentingWriter o, StubGenerator stub) throws BindingException {
         Parameter[] defaultParams = generateDefaults();
         boolean[] useDefault = new boolean[defaultParams.length];
         for (int i = 0; i < useDefault.length; i++) {
@@ -116,11 +129,17 @@ abstract class MethodBinder
             if (!useDefault[pos])   continue;
 
             // if we have default parameters left, then declare with there default value
-            declareWithDefaults(o, defaultParams, useDefault);
+            if (stub == null)
+                declareWithDefaults(o, defaultParams, useDefault);
+            else
+                implementWithDefaults(o, stub, useDefault);
             useDefault[pos] = false;
         }
         
-        declareWithDefaults(o, defaultParams, null);
+        if (stub == null)
+            declareWithDefaults(o, defaultParams, null);
+        else
+            implementWithDefaults(o, stub, null);
     }
 
   class Parameter {
@@ -411,6 +430,37 @@ abstract class MethodBinder
         o.println();
     }
 
+  private void implementWithDefaults(IndentingWriter o, StubGenerator stub, boolean[] useDefault) throws BindingException {
+    if (isEnum(method)) {
+      stub.implement(o, "java.util.Iterator<Com4jObject>", "iterator", new ArrayList<String>(), new ArrayList<String>());
+      return;
+    }
+    implement(o, stub, getMethodName(), useDefault);
+  }
+
+  /**
+   * Generates the implementation of the method that has the given name
+   * and the parameters and the return type of this method.
+   */
+  protected final void implement(IndentingWriter o, StubGenerator stub, String methodName, boolean[] useDefaults) throws BindingException {
+    String returnTypeName = "void";
+    if (returnType != null)
+      returnTypeName = TypeBinding.bind(g, returnType, null).javaType;
+
+    List<String> types = new ArrayList<String>();
+    List<String> names = new ArrayList<String>();
+    for (int i = 0; i < params.length; i++) {
+      if (useDefaults != null && useDefaults[i])
+        continue;
+      IParam p = params[i];
+      if (retParam != -1 && p == params[retParam] && !p.isIn())
+        continue;
+      types.add(getParamType(p));
+      names.add(getParamName(p));
+    }
+    stub.implement(o, returnTypeName, methodName, types, names);
+  }
+
     // TODO: what's the better place for this?
     private static String join(Collection<?> args, String delim) {
         StringBuilder buf = new StringBuilder();
@@ -429,6 +479,10 @@ abstract class MethodBinder
   }
 
   protected final void declareMethodName(IndentingWriter o) {
+    o.print(getMethodName());
+  }
+
+  protected final String getMethodName() {
     String methodName = method.getName();
     if (g.renameGetterAndSetters) {
       String methodStart = methodName.length() > 3 ? methodName.substring(0, 3) : "";
@@ -451,7 +505,7 @@ abstract class MethodBinder
     String name = escape(camelize(methodName));
     if (reservedMethods.contains(name))
       name += '_';
-    o.print(name);
+    return name;
   }
 
   protected final void declareParameters(IndentingWriter o, boolean[] useDefaults) throws BindingException {
@@ -492,13 +546,6 @@ abstract class MethodBinder
   private void declare(IndentingWriter o, IParam p) throws BindingException {
     TypeBinding vb = TypeBinding.bind(g, p.getType(), p.getName());
 
-    String javaType = vb.javaType;
-
-    if (method.isVarArg() && p == params[params.length - 1]) {
-      // use varargs if applicable
-      if (javaType.endsWith("[]"))
-        javaType = javaType.substring(0, javaType.length() - 2) + "...";
-    }
     if (p.isOptional()) {
       o.print("@Optional ");
     }
@@ -518,17 +565,32 @@ abstract class MethodBinder
       o.printf("@MarshalAs(NativeType.%1s) ", vb.nativeType.name());
     }
 
-    o.print(javaType);
+    o.print(getParamType(p));
     o.print(' ');
     declareParamName(o, p);
 
   }
 
+  private String getParamType(IParam p) throws BindingException {
+    String javaType = TypeBinding.bind(g, p.getType(), p.getName()).javaType;
+
+    if (method.isVarArg() && p == params[params.length - 1]) {
+      // use varargs if applicable
+      if (javaType.endsWith("[]"))
+        javaType = javaType.substring(0, javaType.length() - 2) + "...";
+    }
+    return javaType;
+  }
+
   protected void declareParamName(IndentingWriter o, IParam p){
+    o.print(getParamName(p));
+  }
+
+  private String getParamName(IParam p) {
     String name = p.getName();
     if (name == null)
       name = "rhs";
-    o.print(escape(camelize(name)));
+    return escape(camelize(name));
   }
 
   /**
@@ -0,0 +1,202 @@
+package com4j.tlbimp;
+
+import com4j.tlbimp.Generator.LibBinder;
+import com4j.tlbimp.def.IInterfaceDecl;
+import com4j.tlbimp.def.ITypeDecl;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a stub class that implements a custom interface,
+ * so that the runtime doesn't have to go through {@link java.lang.reflect.Proxy}.
+ *
+ * <p>
+ * For the interface {@code IFoo}, this generates {@code IFoo_Stub}, which extends {@code ComStub}
+ * and implements the methods of {@code IFoo} and all its base interfaces.
+ *
+ * @see Generator#setGenerateStubs(boolean)
+ */
+final class StubGenerator {
+    private final Generator g;
+    private final LibBinder lib;
+    private final IInterfaceDecl t;
+
+    /**
+     * Simple name of the interface, like "IFoo".
+     */
+    private final String simpleName;
+
+    /**
+     * Erasures of the methods we've generated, like "foo(int,String)",
+     * so that a method redeclared in a derived interface is implemented only once.
+     */
+    private final Set<String> signatures = new HashSet<String>();
+
+    /**
+     * Used to give unique names to the fields that keep the method bindings.
+     */
+    private int bindingCount;
+
+    StubGenerator(LibBinder lib, IInterfaceDecl t) {
+        this.lib = lib;
+        this.g = lib.parent();
+        this.t = t;
+        this.simpleName = lib.getSimpleTypeName(t);
+    }
+
+    void generate() throws IOException {
+        if(simpleName.equals("Com4jObject"))
+            return; // IUnknown or IDispatch, which the runtime handles by itself.
+
+        IndentingWriter o = lib.createWriter(simpleName+"_Stub.java");
+        lib.generateHeader(o);
+
+        o.printJavadoc("Implements {@link "+simpleName+"} without going through a proxy. Generated by tlbimp.");
+        o.println("@SuppressWarnings(\"unchecked\")");
+        o.printf("public final class %1s_Stub extends ComStub implements %1s {",simpleName,simpleName);
+        o.println();
+        o.in();
+
+        o.printf("public %1s_Stub(Com4jObject wrapper) {",simpleName);
+        o.println();
+        o.in();
+        o.println("super(wrapper);");
+        o.out();
+        o.println("}");
+        o.println();
+
+        o.println("public static final Factory FACTORY = new Factory() {");
+        o.in();
+        o.println("public ComStub create(Com4jObject wrapper) {");
+        o.in();
+        o.printf("return new %1s_Stub(wrapper);",simpleName);
+        o.println();
+        o.out();
+        o.println("}");
+        o.out();
+        o.println("};");
+        o.println();
+
+        // walk up the inheritance chain until we hit IUnknown or IDispatch
+        IInterfaceDecl itf = t;
+        LibBinder itfLib = lib;
+        while(true) {
+            new CustomInterfaceGenerator(itfLib,itf).implementMethods(o,this);
+
+            if(itf.countBaseInterfaces()==0)
+                break;
+            ITypeDecl base = itf.getBaseInterface(0);
+            try {
+                if(g.getTypeName(base).equals("Com4jObject"))
+                    break;
+                itfLib = g.getTypeLibInfo(base.getParent());
+            } catch (BindingException e) {
+                // already reported by the interface generator
+                break;
+            }
+            itf = base.queryInterface(IInterfaceDecl.class);
+            if(itf==null)
+                break;
+        }
+
+        o.out();
+        o.println("}");
+        o.close();
+    }
+
+    /**
+     * Generates one method of the stub, along with the field that keeps its binding.
+     *
+     * @param returnType
+     *      Java type name of the return value, or "void".
+     * @param paramTypes
+     *      Java type names of the parameters.
+     */
+    void implement(IndentingWriter o, String returnType, String name, List<String> paramTypes, List<String> paramNames) {
+        StringBuilder sig = new StringBuilder(name).append('(');
+        StringBuilder classes = new StringBuilder();
+        for (String type : paramTypes) {
+            String erasure = erasure(type);
+            sig.append(erasure).append(',');
+            classes.append(", ").append(erasure).append(".class");
+        }
+        if(!signatures.add(sig.toString()))
+            return; // overridden by a derived interface
+
+        String field = "m"+(bindingCount++);
+        o.printf("private static final Binding %1s = bind(%2s.class, \"%3s\"%4s);",
+            field, simpleName, name, classes);
+        o.println();
+
+        o.printf("public %1s %2s(",returnType,name);
+        o.beginCommaMode();
+        for( int i=0; i<paramTypes.size(); i++ ) {
+            o.comma();
+            o.print(paramTypes.get(i)+' '+paramNames.get(i));
+        }
+        o.endCommaMode();
+        o.println(") {");
+        o.in();
+
+        // always pass the arguments as an array, or a single varargs array would be taken as the argument list
+        StringBuilder call = new StringBuilder("invoke(").append(field);
+        if(!paramNames.isEmpty()) {
+            call.append(", new Object[]{");
+            for( int i=0; i<paramNames.size(); i++ ) {
+                if(i>0) call.append(", ");
+                call.append(paramNames.get(i));
+            }
+            call.append('}');
+        }
+        call.append(')');
+
+        if(returnType.equals("void"))
+            o.println(call+";");
+        else
+            o.println("return ("+box(returnType)+")"+call+";");
+
+        o.out();
+        o.println("}");
+        o.println();
+    }
+
+    /**
+     * Erases type arguments, so that the type can be used in a class literal.
+     */
+    private static String erasure(String type) {
+        if(type.endsWith("..."))
+            type = type.substring(0,type.length()-3)+"[]";
+        StringBuilder buf = new StringBuilder();
+        int depth = 0;
+        for( int i=0; i<type.length(); i++ ) {
+            char ch = type.charAt(i);
+            if(ch=='<')         depth++;
+            else if(ch=='>')    depth--;
+            else if(depth==0)   buf.append(ch);
+        }
+        return buf.toString();
+    }
+
+    private static String box(String type) {
+        String r = BOX_TYPES.get(type);
+        return r!=null ? r : type;
+    }
+
+    private static final Map<String,String> BOX_TYPES = new HashMap<String,String>();
+
+    static {
+        BOX_TYPES.put("boolean","Boolean");
+        BOX_TYPES.put("byte","Byte");
+        BOX_TYPES.put("char","Character");
+        BOX_TYPES.put("short","Short");
+        BOX_TYPES.put("int","Integer");
+        BOX_TYPES.put("long","Long");
+        BOX_TYPES.put("float","Float");
+        BOX_TYPES.put("double","Double");
+    }
+}
@@ -67,6 +67,10 @@ public class AntTaskImpl extends Task implements ErrorListener {
         driver.generateDefaultMethodOverloads = v;
     }
 
+    public void setGenerateStubs(boolean v) {
+        driver.generateStubs = v;
+    }
+
     public void addConfiguredLib( Lib r ) {
         r.validate();
         driver.addLib(r);
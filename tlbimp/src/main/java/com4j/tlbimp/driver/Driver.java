@@ -34,6 +34,7 @@ final class Driver {
     boolean generateDefaultMethodOverloads = false;
     boolean addLibNameToPackageName = false;
     Integer defaultLcid = null;
+    boolean generateStubs = false;
 
     public void addLib( Lib r ) {
         libs.put(r.getLibid(),r);
@@ -105,6 +106,7 @@ final class Driver {
         generator.setGenerateDefaultMethodOverloads(generateDefaultMethodOverloads);
         if (null != defaultLcid)
             generator.setDefaultLcid(defaultLcid);
+        generator.setGenerateStubs(generateStubs);
 
         // repeatedly generate all the libraries that need to be generated
         Set<IWTypeLib> generatedLibs = new HashSet<IWTypeLib>();
@@ -58,6 +58,9 @@ public class Main implements ErrorListener {
     @Option(name="-generateDefaultMethodOverloads",usage="Generate default method overloads")
     public boolean generateDefaultMethodOverloads = false;
 
+    @Option(name="-stubs",usage="Generate stub classes that the runtime uses instead of dynamic proxies")
+    public boolean generateStubs = false;
+
     @Argument
     private List<String> files = new ArrayList<String>();
 
@@ -137,6 +140,7 @@ public class Main implements ErrorListener {
         driver.addLibNameToPackageName = addLibNameToPackageName;
         driver.generateDefaultMethodOverloads = generateDefaultMethodOverloads;
         driver.defaultLcid = defaultLcid;
+        driver.generateStubs = generateStubs;
 
         try {
             if(locale!=null)